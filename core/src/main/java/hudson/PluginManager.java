@@ -23,6 +23,7 @@
  */
 package hudson;
 
+import com.google.common.base.Optional;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.security.ACLContext;
@@ -75,6 +76,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.LogFactory;
+import org.apache.tools.ant.AntClassLoader;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.bytecode.Transformer;
 import org.jvnet.hudson.reactor.Executable;
@@ -117,6 +119,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -290,7 +293,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
      */
     // implementation is minimal --- just enough to run XStream
     // and load plugin-contributed classes.
-    public final ClassLoader uberClassLoader = new UberClassLoader();
+    public final ClassLoader uberClassLoader = new UberClassLoader(activePlugins);
 
     private final Transformer compatibilityTransformer = new Transformer();
 
@@ -856,9 +859,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
             plugins.add(p);
             if (p.isActive())
                 activePlugins.add(p);
-            synchronized (((UberClassLoader) uberClassLoader).loaded) {
-                ((UberClassLoader) uberClassLoader).loaded.clear();
-            }
+            ((UberClassLoader) uberClassLoader).clearCache();
 
             try {
                 p.resolvePluginDependencies();
@@ -1808,17 +1809,40 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
     /**
      * {@link ClassLoader} that can see all plugins.
      */
-    public final class UberClassLoader extends ClassLoader {
+    public static final class UberClassLoader extends ClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        private final List<PluginWrapper> activePlugins;
+
         /**
          * Make generated types visible.
          * Keyed by the generated class name.
          */
         private ConcurrentMap<String, WeakReference<Class>> generatedClasses = new ConcurrentHashMap<String, WeakReference<Class>>();
         /** Cache of loaded, or known to be unloadable, classes. */
-        private final Map<String,Class<?>> loaded = new HashMap<String,Class<?>>();
+        private final ConcurrentMap<String,Optional<Class<?>>> loaded = new ConcurrentHashMap<String,Optional<Class<?>>>();
+        /**
+         * Which plugins have classes in which packages, or null until needed.
+         */
+        private volatile PackageIndex packages;
 
-        public UberClassLoader() {
+        /**
+         * @since TODO
+         */
+        public UberClassLoader(List<PluginWrapper> activePlugins) {
             super(PluginManager.class.getClassLoader());
+            this.activePlugins = activePlugins;
+        }
+
+        /**
+         * Binary compatibility with the inner class this used to be, whose constructor took the outer instance.
+         * @deprecated use {@link PluginManager#uberClassLoader}
+         */
+        @Deprecated
+        public UberClassLoader(PluginManager pluginManager) {
+            this(pluginManager.activePlugins);
         }
 
         public void addNamedClass(String className, Class c) {
@@ -1837,50 +1861,82 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
             if (name.startsWith("SimpleTemplateScript")) { // cf. groovy.text.SimpleTemplateEngine
                 throw new ClassNotFoundException("ignoring " + name);
             }
-            synchronized (loaded) {
-                if (loaded.containsKey(name)) {
-                    Class<?> c = loaded.get(name);
+            Optional<Class<?>> cached = loaded.get(name);
+            if (cached != null) {
+                if (cached.isPresent()) {
+                    return cached.get();
+                } else {
+                    throw new ClassNotFoundException("cached miss for " + name);
+                }
+            }
+
+            // ClassLoader.loadClass holds the lock for this name, so no plugin is asked to define the class twice
+            String pkg = name.substring(0, Math.max(name.lastIndexOf('.'), 0));
+            Class<?> c = null;
+            PackageIndex index = getPackageIndex();
+            PluginWrapper owner = index != null ? index.owners.get(pkg) : null;
+            if (owner != null && activePlugins.contains(owner)) {
+                // no other plugin has classes in this package, so the first plugin that has the class can only be this one
+                c = findClass(owner, name);
+            } else {
+                for (PluginWrapper p : activePlugins) {
+                    c = findClass(p, name);
                     if (c != null) {
-                        return c;
-                    } else {
-                        throw new ClassNotFoundException("cached miss for " + name);
+                        break;
                     }
                 }
             }
-            if (FAST_LOOKUP) {
-                for (PluginWrapper p : activePlugins) {
-                    try {
-                        Class<?> c = ClassLoaderReflectionToolkit._findLoadedClass(p.classLoader, name);
-                        if (c != null) {
-                            synchronized (loaded) {
-                                loaded.put(name, c);
-                            }
-                            return c;
-                        }
-                        // calling findClass twice appears to cause LinkageError: duplicate class def
-                        c = ClassLoaderReflectionToolkit._findClass(p.classLoader, name);
-                        synchronized (loaded) {
-                            loaded.put(name, c);
-                        }
+            loaded.put(name, Optional.<Class<?>>fromNullable(c));
+            if (c == null) {
+                // not found in any of the classloader. delegate.
+                throw new ClassNotFoundException(name);
+            }
+            return c;
+        }
+
+        private @CheckForNull Class<?> findClass(PluginWrapper p, String name) {
+            try {
+                if (FAST_LOOKUP) {
+                    Class<?> c = ClassLoaderReflectionToolkit._findLoadedClass(p.classLoader, name);
+                    if (c != null) {
                         return c;
-                    } catch (ClassNotFoundException e) {
-                        //not found. try next
                     }
+                    // calling findClass twice appears to cause LinkageError: duplicate class def
+                    return ClassLoaderReflectionToolkit._findClass(p.classLoader, name);
+                } else {
+                    return p.classLoader.loadClass(name);
                 }
-            } else {
-                for (PluginWrapper p : activePlugins) {
-                    try {
-                        return p.classLoader.loadClass(name);
-                    } catch (ClassNotFoundException e) {
-                        //not found. try next
+            } catch (ClassNotFoundException e) {
+                //not found. try next
+                return null;
+            }
+        }
+
+        /**
+         * Forgets what has been looked up so far, as a newly loaded plugin may have classes that were missing,
+         * or have classes of a package only another plugin had.
+         */
+        private void clearCache() {
+            packages = null;
+            loaded.clear();
+        }
+
+        /**
+         * Which plugins have classes in which packages, or null if that cannot be told.
+         */
+        @CheckForNull PackageIndex getPackageIndex() {
+            PackageIndex index = packages;
+            if (index == null || index.size != activePlugins.size()) {
+                synchronized (this) {
+                    // listing the archives is expensive, so only one thread does it while the others wait for the result
+                    index = packages;
+                    if (index == null || index.size != activePlugins.size()) {
+                        index = PackageIndex.of(activePlugins);
+                        packages = index;
                     }
                 }
             }
-            synchronized (loaded) {
-                loaded.put(name, null);
-            }
-            // not found in any of the classloader. delegate.
-            throw new ClassNotFoundException(name);
+            return index.complete ? index : null;
         }
 
         @Override
@@ -1923,6 +1979,113 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
         }
     }
 
+    /**
+     * Which packages have classes in which plugins, read from the archives of the plugins.
+     */
+    static final class PackageIndex {
+        /**
+         * Number of plugins indexed.
+         */
+        final int size;
+        /**
+         * False if the classes of some plugin could not be listed, in which case nothing can be told from the others.
+         */
+        final boolean complete;
+        /**
+         * Packages with classes in exactly one plugin, and that plugin.
+         */
+        final Map<String,PluginWrapper> owners = new HashMap<String,PluginWrapper>();
+
+        private PackageIndex(int size, boolean complete) {
+            this.size = size;
+            this.complete = complete;
+        }
+
+        static PackageIndex of(List<PluginWrapper> plugins) {
+            PluginWrapper[] array = plugins.toArray(new PluginWrapper[0]);
+            Map<PluginWrapper,Set<String>> packages = new LinkedHashMap<PluginWrapper,Set<String>>();
+            for (PluginWrapper p : array) {
+                Set<String> s = listPackages(p);
+                if (s == null) {
+                    return new PackageIndex(array.length, false);
+                }
+                packages.put(p, s);
+            }
+            PackageIndex index = new PackageIndex(array.length, true);
+            Set<String> shared = new HashSet<String>();
+            for (Map.Entry<PluginWrapper,Set<String>> e : packages.entrySet()) {
+                for (String pkg : e.getValue()) {
+                    if (shared.contains(pkg)) {
+                        continue;
+                    }
+                    PluginWrapper other = index.owners.put(pkg, e.getKey());
+                    if (other != null && other != e.getKey()) {
+                        index.owners.remove(pkg);
+                        shared.add(pkg);
+                    }
+                }
+            }
+            return index;
+        }
+
+        /**
+         * Lists the packages of the classes the class loader of a plugin defines itself, or returns null if they cannot be told.
+         */
+        private static @CheckForNull Set<String> listPackages(PluginWrapper p) {
+            String classpath;
+            if (p.classLoader instanceof jenkins.util.AntClassLoader) {
+                classpath = ((jenkins.util.AntClassLoader) p.classLoader).getClasspath();
+            } else if (p.classLoader instanceof AntClassLoader) { // PluginFirstClassLoader
+                classpath = ((AntClassLoader) p.classLoader).getClasspath();
+            } else {
+                return null;
+            }
+            Set<String> r = new HashSet<String>();
+            try {
+                for (String path : classpath.split(File.pathSeparator)) {
+                    if (path.isEmpty()) {
+                        continue;
+                    }
+                    File f = new File(path);
+                    if (f.isDirectory()) {
+                        listPackages(f, "", r);
+                    } else if (f.isFile()) {
+                        try (JarFile jar = new JarFile(f)) {
+                            Enumeration<JarEntry> entries = jar.entries();
+                            while (entries.hasMoreElements()) {
+                                addPackage(entries.nextElement().getName(), r);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to list the classes of " + p.getShortName(), e);
+                return null;
+            }
+            return r;
+        }
+
+        private static void listPackages(File dir, String prefix, Set<String> r) {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    listPackages(child, prefix + child.getName() + '/', r);
+                } else {
+                    addPackage(prefix + child.getName(), r);
+                }
+            }
+        }
+
+        private static void addPackage(String entry, Set<String> r) {
+            if (entry.endsWith(".class")) {
+                r.add(entry.substring(0, Math.max(entry.lastIndexOf('/'), 0)).replace('/', '.'));
+            }
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(PluginManager.class.getName());
 
     public static boolean FAST_LOOKUP = !SystemProperties.getBoolean(PluginManager.class.getName()+".noFastLookup");
@@ -27,27 +27,44 @@ package hudson.console;
 
 import com.trilead.ssh2.crypto.Base64;
 import jenkins.model.Jenkins;
+import hudson.model.Run;
 import hudson.remoting.ObjectInputStreamEx;
+import hudson.util.CharSpool;
+import hudson.util.LineEndNormalizingWriter;
 import hudson.util.TimeUnit2;
 import jenkins.security.CryptoConfidentialKey;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.framework.io.ByteBuffer;
 import org.kohsuke.stapler.framework.io.LargeText;
+import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
 import javax.crypto.Cipher;
+import javax.servlet.http.HttpServletResponse;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import com.jcraft.jzlib.GZIPInputStream;
 import com.jcraft.jzlib.GZIPOutputStream;
 
@@ -76,14 +93,28 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     private T context;
 
+    /**
+     * The file if it is a {@link BlockCompressedLog}, which {@link LargeText} cannot read by itself.
+     */
+    private final File blocks;
+
+    /**
+     * The file, if this text is backed by one.
+     */
+    private final File file;
+
     public AnnotatedLargeText(File file, Charset charset, boolean completed, T context) {
         super(file, charset, completed, true);
         this.context = context;
+        this.blocks = BlockCompressedLog.isBlockCompressed(file) ? file : null;
+        this.file = file;
     }
 
     public AnnotatedLargeText(ByteBuffer memory, Charset charset, boolean completed, T context) {
         super(memory, charset, completed);
         this.context = context;
+        this.blocks = null;
+        this.file = null;
     }
 
     public void doProgressiveHtml(StaplerRequest req, StaplerResponse rsp) throws IOException {
@@ -91,6 +122,190 @@ public class AnnotatedLargeText<T> extends LargeText {
         doProgressText(req,rsp);
     }
 
+    @Override
+    public void doProgressText(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (blocks == null && (isHtml() || !isPlainFile())) {
+            super.doProgressText(req, rsp);
+            return;
+        }
+        // same as LargeText, except that the length is that of the uncompressed log,
+        // and that plain text is written as it is read rather than spooled in memory first
+        setContentType(rsp);
+        rsp.setStatus(HttpServletResponse.SC_OK);
+
+        if (blocks == null && !file.exists()) {
+            rsp.addHeader("X-Text-Size","0");
+            rsp.addHeader("X-More-Data","true");
+            return;
+        }
+
+        long start = 0;
+        String s = req.getParameter("start");
+        if(s!=null)
+            start = Long.parseLong(s);
+
+        if(length() < start)
+            start = 0;
+
+        if (blocks == null) {
+            try (LogFileSession session = new LogFileSession(file)) {
+                long end = lineEnd(session, start);
+                rsp.addHeader("X-Text-Size",String.valueOf(end));
+                if(!isComplete())
+                    rsp.addHeader("X-More-Data","true");
+
+                Writer w;
+                if(end-start>4096)
+                    w = rsp.getCompressedWriter(req);
+                else
+                    w = rsp.getWriter();
+                WriterOutputStream out = new WriterOutputStream(new LineEndNormalizingWriter(w), charset);
+                session.transferTo(start, end, out);
+                out.flush();
+                w.close();
+            }
+            return;
+        }
+
+        CharSpool spool = new CharSpool();
+        long r = writeLogTo(start,spool);
+
+        rsp.addHeader("X-Text-Size",String.valueOf(r));
+        if(!isComplete())
+            rsp.addHeader("X-More-Data","true");
+
+        Writer w;
+        if(r-start>4096)
+            w = rsp.getCompressedWriter(req);
+        else
+            w = rsp.getWriter();
+        spool.writeTo(new LineEndNormalizingWriter(w));
+        w.close();
+    }
+
+    /**
+     * Streams the console as HTML server-sent events, so the browser does not have to poll {@link #doProgressiveHtml}.
+     *
+     * <p>
+     * Each message carries the HTML of one or more lines, with the offset in the log to continue from as its ID.
+     * An {@code end} event marks the end of the log. A {@code fallback} event means the console cannot be streamed
+     * (anymore), and the browser should poll from the offset in its data.
+     *
+     * @see ConsoleStream
+     * @since TODO
+     */
+    public void doProgressiveHtmlStream(StaplerRequest req, StaplerResponse rsp) throws IOException, InterruptedException {
+        long start = 0;
+        String s = req.getParameter("start");
+        if (s != null)
+            start = Long.parseLong(s);
+
+        rsp.setContentType("text/event-stream;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        PrintWriter w = rsp.getWriter();
+
+        ConsoleStream.Subscriber subscriber = null;
+        if (isStreamable() && start <= length())
+            subscriber = ConsoleStream.subscribe((Run<?, ?>) context, file);
+        if (subscriber == null) {
+            sendEvent(w, "fallback", String.valueOf(start), null);
+            return;
+        }
+        try {
+            StringWriter html = new StringWriter();
+            ConsoleAnnotationOutputStream caw = new ConsoleAnnotationOutputStream(html, createAnnotator(req), context, charset);
+            // offset of the next byte we get, and of the first byte whose HTML has not been sent yet;
+            // the stream may start before the offset the browser has, if its reader lags behind the file
+            long pos = Math.min(start, subscriber.getStart()), sent = start;
+
+            if (start < subscriber.getStart()) {
+                try (InputStream in = new BoundedInputStream(openRaw(start), subscriber.getStart() - start)) {
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        sent = feed(caw, buf, 0, n, pos, sent);
+                        pos += n;
+                        sendHtml(w, html, sent);
+                    }
+                }
+                pos = subscriber.getStart();
+            }
+            while (!w.checkError()) { // otherwise the browser went away
+                byte[] chunk = subscriber.next(STREAM_KEEPALIVE);
+                if (chunk == null) {
+                    w.write(": keepalive\n\n");
+                    w.flush();
+                } else if (chunk == ConsoleStream.END) {
+                    caw.forceEol();
+                    sendHtml(w, html, pos);
+                    sendEvent(w, "end", String.valueOf(pos), null);
+                    return;
+                } else if (chunk == ConsoleStream.DROPPED) {
+                    sendEvent(w, "fallback", String.valueOf(sent), null);
+                    return;
+                } else {
+                    // skip whatever the browser already has
+                    int off = (int) Math.max(0, Math.min(chunk.length, start - pos));
+                    sent = feed(caw, chunk, off, chunk.length - off, pos + off, sent);
+                    pos += chunk.length;
+                    sendHtml(w, html, sent);
+                }
+            }
+        } finally {
+            subscriber.unsubscribe();
+        }
+    }
+
+    /**
+     * Whether the browser should try {@link #doProgressiveHtmlStream} rather than poll.
+     */
+    @Restricted(NoExternalUse.class)
+    public boolean isStreamable() {
+        return ConsoleStream.isEnabled() && file != null && blocks == null && context instanceof Run && !isComplete();
+    }
+
+    /**
+     * Passes part of the log through the annotator.
+     *
+     * @param pos
+     *      offset in the log of {@code b[off]}
+     * @return
+     *      the offset after the last complete line passed so far, whose HTML has been produced,
+     *      which is {@code sent} if there is no line end in these bytes
+     */
+    private static long feed(OutputStream caw, byte[] b, int off, int len, long pos, long sent) throws IOException {
+        caw.write(b, off, len);
+        for (int i = off + len - 1; i >= off; i--) {
+            if (b[i] == '\n')
+                return pos + (i - off) + 1;
+        }
+        return sent;
+    }
+
+    /**
+     * Sends the HTML produced so far, if any, as a message whose ID is where it ends in the log.
+     */
+    private static void sendHtml(PrintWriter w, StringWriter html, long sent) {
+        if (html.getBuffer().length() > 0) {
+            sendEvent(w, null, html.toString(), sent);
+            html.getBuffer().setLength(0);
+        }
+    }
+
+    /**
+     * Writes one server-sent event. Line ends in the data become separate data fields, which the browser joins by a newline.
+     */
+    private static void sendEvent(PrintWriter w, String event, String data, Long id) {
+        if (event != null)
+            w.write("event: " + event + "\n");
+        for (String line : data.split("\r\n|\r|\n", -1))
+            w.write("data: " + line + "\n");
+        if (id != null)
+            w.write("id: " + id + "\n");
+        w.write("\n");
+        w.flush();
+    }
+
     /**
      * Aliasing what I think was a wrong name in {@link LargeText}
      */
@@ -137,12 +352,37 @@ public class AnnotatedLargeText<T> extends LargeText {
         return ConsoleAnnotator.initial(context==null ? null : context.getClass());
     }
 
+    @Override
+    public long length() {
+        if (blocks == null)
+            return super.length();
+        try {
+            return BlockCompressedLog.length(blocks);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + blocks, e);
+            return 0;
+        }
+    }
+
+    @Override
+    public Reader readAll() throws IOException {
+        if (blocks == null)
+            return super.readAll();
+        return new InputStreamReader(BlockCompressedLog.open(blocks, 0), charset);
+    }
+
     @Override
     public long writeLogTo(long start, Writer w) throws IOException {
         if (isHtml())
             return writeHtmlTo(start, w);
-        else
+        else if (blocks == null && !isPlainFile())
             return super.writeLogTo(start,w);
+        else {
+            WriterOutputStream out = new WriterOutputStream(w, charset);
+            long r = writeRaw(start, out);
+            out.flush();
+            return r;
+        }
     }
 
     /**
@@ -151,7 +391,7 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     @Override
     public long writeLogTo(long start, OutputStream out) throws IOException {
-        return super.writeLogTo(start, new PlainTextConsoleOutputStream(out));
+        return writeRaw(start, new PlainTextConsoleOutputStream(out));
     }
 
     /**
@@ -159,13 +399,94 @@ public class AnnotatedLargeText<T> extends LargeText {
      * @since 1.577
      */
     public long writeRawLogTo(long start, OutputStream out) throws IOException {
-        return super.writeLogTo(start, out);
+        return writeRaw(start, out);
+    }
+
+    /**
+     * {@link LargeText#writeLogTo(long, OutputStream)}, also for a {@link BlockCompressedLog}.
+     * Such a log is always complete, so this simply writes everything from the start offset.
+     * An uncompressed log is read through a {@link LogFileSession}.
+     */
+    private long writeRaw(long start, OutputStream out) throws IOException {
+        if (isPlainFile()) {
+            try (LogFileSession session = new LogFileSession(file)) {
+                long r = session.transferTo(start, lineEnd(session, start), out);
+                out.flush();
+                return r;
+            }
+        }
+        if (blocks == null)
+            return super.writeLogTo(start, out);
+        try (InputStream in = BlockCompressedLog.open(blocks, start)) {
+            return start + IOUtils.copyLarge(in, out);
+        }
+    }
+
+    /**
+     * Where to stop reading: the end of the log if it is complete, otherwise the end of its last complete line,
+     * as {@link LargeText} does. Never before {@code start}.
+     */
+    private long lineEnd(LogFileSession session, long start) throws IOException {
+        long size = session.size();
+        if (size <= start)
+            return start;
+        return isComplete() ? size : session.lastLineEnd(start, size);
+    }
+
+    /**
+     * Whether this text is an uncompressed log file, which can be read through a {@link LogFileSession}.
+     */
+    private boolean isPlainFile() {
+        return file != null && blocks == null && !file.getName().endsWith(".gz");
+    }
+
+    /**
+     * Opens the raw log at the given offset.
+     */
+    private InputStream openRaw(long start) throws IOException {
+        if (blocks != null)
+            return BlockCompressedLog.open(blocks, start);
+        InputStream in = new FileInputStream(file);
+        try {
+            if (file.getName().endsWith(".gz"))
+                in = new GZIPInputStream(in);
+            IOUtils.skipFully(in, start);
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
     }
 
     public long writeHtmlTo(long start, Writer w) throws IOException {
+        StaplerRequest req = Stapler.getCurrentRequest();
+        HtmlConsoleCache.Recorder recorder = null;
+        if (HtmlConsoleCache.isEnabled() && isComplete() && file != null && context instanceof Run && req != null) {
+            File dir = ((Run) context).getRootDir();
+            String key = HtmlConsoleCache.getKey(req);
+            long length = length();
+            HtmlConsoleCache cache = HtmlConsoleCache.open(dir, length, key);
+            if (cache != null) {
+                try {
+                    if (writeCachedHtmlTo(start, w, cache, req))
+                        return length;
+                } finally {
+                    cache.close();
+                }
+            } else if (start == 0 && req.getHeader("X-ConsoleAnnotator") == null) {
+                recorder = HtmlConsoleCache.record(dir, length, key);
+            }
+        }
+
         ConsoleAnnotationOutputStream caw = new ConsoleAnnotationOutputStream(
-                w, createAnnotator(Stapler.getCurrentRequest()), context, charset);
-        long r = super.writeLogTo(start,caw);
+                recorder != null ? recorder.tee(w) : w, createAnnotator(req), context, charset);
+        long r = -1;
+        try {
+            r = writeRaw(start, recorder != null ? recorder.wrap(caw) : caw);
+        } finally {
+            if (recorder != null)
+                recorder.commit(r);
+        }
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Cipher sym = PASSING_ANNOTATOR.encrypt();
@@ -179,6 +500,33 @@ public class AnnotatedLargeText<T> extends LargeText {
         return r;
     }
 
+    /**
+     * Renders what precedes the first checkpoint at or after {@code start}, then copies the cached HTML from there.
+     *
+     * @return false if there is no such checkpoint, so nothing has been written
+     */
+    private boolean writeCachedHtmlTo(long start, Writer w, HtmlConsoleCache cache, StaplerRequest req) throws IOException {
+        long[] checkpoint = cache.findCheckpoint(start);
+        if (checkpoint == null)
+            return false;
+        if (checkpoint[0] > start) {
+            ConsoleAnnotationOutputStream caw = new ConsoleAnnotationOutputStream(w, createAnnotator(req), context, charset);
+            try (InputStream in = openRaw(start)) {
+                IOUtils.copyLarge(new BoundedInputStream(in, checkpoint[0] - start), caw);
+            }
+            caw.flush();
+        }
+        cache.writeHtmlTo(checkpoint[1], w);
+        return true;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(AnnotatedLargeText.class.getName());
+
+    /**
+     * Milliseconds between comments sent over an idle console stream, to find out if the browser is still there.
+     */
+    private static final long STREAM_KEEPALIVE = 15000;
+
     /**
      * Used for sending the state of ConsoleAnnotator to the client, because we are deserializing this object later.
      */
@@ -0,0 +1,257 @@
+package hudson.console;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes a build log from a background thread, so that a slow disk does not hold up the build itself.
+ *
+ * <p>
+ * Writes are copied into a ring buffer of {@link #BUFFER_SIZE} bytes, which a writer thread drains
+ * in as large chunks as have accumulated. When the buffer is full, writers wait for it to drain, so memory stays bounded.
+ * Bytes reach the underlying stream in the order they were written. {@link #flush()} and {@link #close()} wait until
+ * everything written before them has been written to, and flushed or closed on, the underlying stream. Errors of
+ * the underlying stream are reported by the next call.
+ *
+ * <p>
+ * Used for build logs if {@code hudson.console.AsyncLogOutputStream.enabled} is set.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class AsyncLogOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final byte[] ring;
+    private final Object lock = new Object();
+
+    // all guarded by lock
+    /**
+     * Position of the first byte not yet written to {@link #out}.
+     */
+    private int head;
+    /**
+     * Number of bytes in {@link #ring} not yet written to {@link #out}.
+     */
+    private int size;
+    /**
+     * Total number of bytes accepted, and written to {@link #out}.
+     */
+    private long accepted, written;
+    /**
+     * {@link #written} count up to which {@link #out} needs to be flushed, and has been.
+     */
+    private long flushRequested, flushed;
+    /**
+     * Whether {@link #drainer} is scheduled or running. Only one thread at a time writes to {@link #out}.
+     */
+    private boolean draining;
+    private boolean closed;
+    private IOException failure;
+
+    AsyncLogOutputStream(@Nonnull OutputStream out, int bufferSize) {
+        this.out = out;
+        this.ring = new byte[bufferSize];
+    }
+
+    /**
+     * Decorates the stream that writes a build log, if asynchronous logging is enabled.
+     */
+    public static @Nonnull OutputStream wrap(@Nonnull OutputStream out) {
+        return ENABLED ? new AsyncLogOutputStream(out, BUFFER_SIZE) : out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                check();
+                while (size == ring.length) {
+                    interrupted |= await();
+                    check();
+                }
+                ring[(head + size) % ring.length] = (byte) b;
+                size++;
+                accepted++;
+                schedule();
+            }
+        } finally {
+            restore(interrupted);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                while (len > 0) {
+                    check();
+                    while (size == ring.length) {
+                        interrupted |= await();
+                        check();
+                    }
+                    int n = Math.min(len, ring.length - size);
+                    int tail = (head + size) % ring.length;
+                    int first = Math.min(n, ring.length - tail);
+                    System.arraycopy(b, off, ring, tail, first);
+                    System.arraycopy(b, off + first, ring, 0, n - first);
+                    size += n;
+                    accepted += n;
+                    off += n;
+                    len -= n;
+                    schedule();
+                }
+            }
+        } finally {
+            restore(interrupted);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                check();
+                long target = accepted;
+                flushRequested = Math.max(flushRequested, target);
+                schedule();
+                while (flushed < target) {
+                    interrupted |= await();
+                    check();
+                }
+            }
+        } finally {
+            restore(interrupted);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                while (draining) {
+                    interrupted |= await();
+                }
+            }
+            // nobody else touches out anymore
+            out.close();
+            synchronized (lock) {
+                if (failure != null) {
+                    throw new IOException("Failed to write the log", failure);
+                }
+            }
+        } finally {
+            restore(interrupted);
+        }
+    }
+
+    private void check() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to write the log", failure);
+        }
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    private void schedule() {
+        if (!draining) {
+            draining = true;
+            writerThreads.submit(drainer);
+        }
+    }
+
+    /**
+     * Waits for the writer thread to make progress.
+     * Interruptions are deferred until the operation completes, since giving up would lose log output.
+     *
+     * @return true if the thread was interrupted
+     */
+    private boolean await() {
+        try {
+            lock.wait();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    private static void restore(boolean interrupted) {
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final Runnable drainer = new Runnable() {
+        public void run() {
+            while (true) {
+                int start, n;
+                boolean flush;
+                synchronized (lock) {
+                    if (failure != null || size == 0 && flushed >= flushRequested) {
+                        draining = false;
+                        lock.notifyAll();
+                        return;
+                    }
+                    start = head;
+                    n = Math.min(size, ring.length - head);
+                    flush = written + n >= flushRequested && flushed < flushRequested;
+                }
+                try {
+                    // everything that accumulated while we were busy goes out at once
+                    out.write(ring, start, n);
+                    if (flush) {
+                        out.flush();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    synchronized (lock) {
+                        failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                        draining = false;
+                        lock.notifyAll();
+                    }
+                    return;
+                }
+                synchronized (lock) {
+                    head = (head + n) % ring.length;
+                    size -= n;
+                    written += n;
+                    if (flush) {
+                        flushed = written;
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    };
+
+    private static final ExecutorService writerThreads = Executors.newCachedThreadPool(
+            new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "AsyncLogOutputStream")));
+
+    /**
+     * Whether build logs are written asynchronously.
+     */
+    private static final boolean ENABLED = SystemProperties.getBoolean(AsyncLogOutputStream.class.getName() + ".enabled");
+
+    /**
+     * Number of bytes each build can write ahead of the disk.
+     */
+    private static final int BUFFER_SIZE = Math.max(1, SystemProperties.getInteger(AsyncLogOutputStream.class.getName() + ".bufferSize", 256 * 1024));
+}
@@ -0,0 +1,363 @@
+package hudson.console;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed build log that can be read from an arbitrary offset without decompressing what comes before.
+ *
+ * <p>
+ * The log is cut into blocks of {@link #BLOCK_SIZE} bytes that are deflated independently,
+ * followed by a table of the file offsets of all the blocks:
+ * <pre>
+ * header:  int MAGIC, int VERSION, int blockSize
+ * blocks:  raw deflate data, one after another
+ * table:   long offset of each block
+ * footer:  long offset of the table, long uncompressed length, int number of blocks, int MAGIC
+ * </pre>
+ * To read from offset {@code n}, we only need to inflate the block {@code n/blockSize} and onward.
+ *
+ * <p>
+ * Completed builds get their {@code log} converted into {@code log.blocks} in the background
+ * if {@code hudson.console.BlockCompressedLog.enabled} is set.
+ * {@link Run#getLogFile()}, {@link Run#getLogInputStream()} and {@link AnnotatedLargeText} read either form.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class BlockCompressedLog implements Closeable {
+
+    private final RandomAccessFile file;
+    private final int blockSize;
+    private final long length;
+    /**
+     * Offsets of the blocks, plus the offset of the table as the end of the last block.
+     */
+    private final long[] offsets;
+
+    private BlockCompressedLog(File f) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        try {
+            if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+                throw new IOException(f + " is not a block compressed log");
+            }
+            blockSize = file.readInt();
+            file.seek(file.length() - FOOTER_SIZE);
+            long tableOffset = file.readLong();
+            length = file.readLong();
+            int blocks = file.readInt();
+            if (file.readInt() != MAGIC || blockSize <= 0 || (length + blockSize - 1) / blockSize != blocks) {
+                throw new IOException(f + " is incomplete");
+            }
+            offsets = new long[blocks + 1];
+            file.seek(tableOffset);
+            for (int i = 0; i < blocks; i++) {
+                offsets[i] = file.readLong();
+            }
+            offsets[blocks] = tableOffset;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Uncompressed length of the log.
+     */
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Reads one block into the given buffer.
+     *
+     * @return the number of bytes in the block
+     */
+    private int readBlock(int i, byte[] buf, Inflater inflater) throws IOException {
+        byte[] compressed = new byte[(int) (offsets[i + 1] - offsets[i])];
+        file.seek(offsets[i]);
+        file.readFully(compressed);
+        int size = (int) Math.min(blockSize, length - (long) i * blockSize);
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int n = 0;
+            while (n < size) {
+                int r = inflater.inflate(buf, n, size - n);
+                if (r == 0) {
+                    throw new EOFException("Block " + i + " is truncated");
+                }
+                n += r;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + i + " is corrupted", e);
+        }
+        return size;
+    }
+
+    /**
+     * Stream over the uncompressed log. Closing it closes the underlying file.
+     */
+    private final class BlockInputStream extends InputStream {
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] buf = new byte[blockSize];
+        private int block;
+        private int pos;
+        private int size;
+
+        BlockInputStream(long start) throws IOException {
+            if (start >= length) {
+                block = offsets.length - 1;
+                return;
+            }
+            block = (int) (start / blockSize);
+            size = readBlock(block, buf, inflater);
+            pos = (int) (start - (long) block * blockSize);
+        }
+
+        private boolean fill() throws IOException {
+            while (pos >= size) {
+                if (block + 1 >= offsets.length - 1) {
+                    return false;
+                }
+                size = readBlock(++block, buf, inflater);
+                pos = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buf[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, size - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return size - pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            BlockCompressedLog.this.close();
+        }
+    }
+
+    /**
+     * Is this file in the block compressed format?
+     */
+    public static boolean isBlockCompressed(@Nonnull File f) {
+        return f.getName().endsWith(SUFFIX);
+    }
+
+    /**
+     * Gets the uncompressed length of a block compressed log.
+     */
+    public static long length(@Nonnull File f) throws IOException {
+        try (BlockCompressedLog log = new BlockCompressedLog(f)) {
+            return log.length();
+        }
+    }
+
+    /**
+     * Opens a block compressed log to be read from the given uncompressed offset.
+     */
+    public static @Nonnull InputStream open(@Nonnull File f, long start) throws IOException {
+        BlockCompressedLog log = new BlockCompressedLog(f);
+        try {
+            return log.new BlockInputStream(start);
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the block compressed counterpart of the given log file.
+     */
+    public static @Nonnull File getCompressedFile(@Nonnull File log) {
+        return new File(log.getPath() + SUFFIX);
+    }
+
+    /**
+     * Converts a log into the block compressed form, then deletes the original
+     * along with its {@link LogLineIndex}.
+     */
+    public static void compress(@Nonnull File log) throws IOException {
+        File target = getCompressedFile(log);
+        File tmp = new File(target.getPath() + ".tmp");
+        long length = 0;
+        int blocks = 0;
+        try (InputStream in = new FileInputStream(log);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(BLOCK_SIZE);
+            long pos = 12;
+
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                byte[] block = new byte[BLOCK_SIZE];
+                byte[] compressed = new byte[8192];
+                long[] table = new long[16];
+                int n;
+                while ((n = readFully(in, block)) > 0) {
+                    if (blocks == table.length) {
+                        long[] bigger = new long[table.length * 2];
+                        System.arraycopy(table, 0, bigger, 0, blocks);
+                        table = bigger;
+                    }
+                    table[blocks++] = pos;
+                    length += n;
+                    deflater.reset();
+                    deflater.setInput(block, 0, n);
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int c = deflater.deflate(compressed);
+                        out.write(compressed, 0, c);
+                        pos += c;
+                    }
+                }
+
+                for (int i = 0; i < blocks; i++) {
+                    out.writeLong(table[i]);
+                }
+                out.writeLong(pos);
+                out.writeLong(length);
+                out.writeInt(blocks);
+                out.writeInt(MAGIC);
+            } finally {
+                deflater.end();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        if (log.length() != length) {
+            // something is still writing to the log
+            tmp.delete();
+            throw new IOException(log + " was modified while being compressed");
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Failed to rename " + tmp + " to " + target);
+        }
+        if (!log.delete()) {
+            // keep the original, which takes precedence anyway
+            target.delete();
+            throw new IOException("Failed to delete " + log);
+        }
+        LogLineIndex.getIndexFile(log).delete();
+    }
+
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int n = 0;
+        while (n < buf.length) {
+            int r = in.read(buf, n, buf.length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    /**
+     * Compresses the logs of completed builds in the background.
+     */
+    @Extension
+    public static final class CompressOnCompletion extends RunListener<Run> {
+        @Override
+        public void onFinalized(Run r) {
+            if (!ENABLED) {
+                return;
+            }
+            final File log = r.getLogFile();
+            if (!log.getName().equals("log") || !log.isFile()) {
+                return; // already compressed one way or the other
+            }
+            compressionThread.submit(new Runnable() {
+                public void run() {
+                    try {
+                        compress(log);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to compress " + log, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Executor used for compression. Limited up to one thread since
+     * this should be a fairly low-priority task.
+     */
+    private static final ExecutorService compressionThread = new ThreadPoolExecutor(
+        0, 1, 5L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "BlockCompressedLog")));
+
+    private static final String SUFFIX = ".blocks";
+    private static final int MAGIC = 0x4a4c4f47; // "JLOG"
+    private static final int VERSION = 1;
+    private static final int FOOTER_SIZE = 24;
+
+    /**
+     * Uncompressed size of each block. Smaller blocks compress worse but make seeking cheaper.
+     */
+    private static final int BLOCK_SIZE = SystemProperties.getInteger(BlockCompressedLog.class.getName() + ".blockSize", 64 * 1024);
+
+    /**
+     * Whether logs of completed builds get compressed.
+     */
+    private static final boolean ENABLED = SystemProperties.getBoolean(BlockCompressedLog.class.getName() + ".enabled");
+
+    private static final Logger LOGGER = Logger.getLogger(BlockCompressedLog.class.getName());
+}
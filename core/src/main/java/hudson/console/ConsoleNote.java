@@ -32,23 +32,34 @@ import hudson.model.Run;
 import hudson.remoting.ObjectInputStreamEx;
 import hudson.util.IOUtils;
 import hudson.util.UnbufferedBase64InputStream;
-import org.apache.commons.codec.binary.Base64OutputStream;
-import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.tools.ant.BuildListener;
 
+import javax.crypto.Mac;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import com.jcraft.jzlib.GZIPInputStream;
 import com.jcraft.jzlib.GZIPOutputStream;
 import hudson.remoting.ClassFilter;
@@ -164,7 +175,7 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
         // atomically write to the final output, to minimize the chance of something else getting in between the output.
         // even with this, it is still technically possible to get such a mix-up to occur (for example,
         // if Java program is reading stdout/stderr separately and copying them into the same final stream.)
-        out.write(encodeToBytes().toByteArray());
+        out.write(encodeToBytes());
     }
 
     /**
@@ -175,39 +186,69 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
      * encoding is ASCII compatible.
      */
     public void encodeTo(Writer out) throws IOException {
-        out.write(encodeToBytes().toString());
+        out.write(new String(encodeToBytes()));
     }
 
-    private ByteArrayOutputStream encodeToBytes() throws IOException {
+    /**
+     * Computes the encoded form.
+     *
+     * <p>
+     * Notes tend to be emitted in large numbers (think of one {@link HyperlinkNote} per test case),
+     * so this avoids the stream stack the format was originally defined with: the serialized form is
+     * compressed with a pooled {@link Deflater}, signed with a pooled {@link Mac}, and notes that serialize to
+     * the same bytes as a recently encoded one reuse its encoded form. The result is the same format.
+     * The returned array must not be modified.
+     */
+    private byte[] encodeToBytes() throws IOException {
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        try (ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(buf))) {
+        try (ObjectOutputStream oos = new ObjectOutputStream(buf)) {
             oos.writeObject(this);
         }
+        byte[] serialized = buf.toByteArray();
 
-        ByteArrayOutputStream buf2 = new ByteArrayOutputStream();
+        // if there is no Jenkins, we are in another JVM and cannot sign; result will be ignored unless INSECURE
+        boolean sign = Jenkins.getInstanceOrNull() != null;
+        Bytes key = null;
+        if (sign) {
+            key = new Bytes(serialized);
+            synchronized (ENCODED) {
+                byte[] encoded = ENCODED.get(key);
+                if (encoded != null) {
+                    return encoded;
+                }
+            }
+        }
 
-        DataOutputStream dos = new DataOutputStream(new Base64OutputStream(buf2,true,-1,null));
-        try {
-            buf2.write(PREAMBLE);
-            if (Jenkins.getInstanceOrNull() != null) { // else we are in another JVM and cannot sign; result will be ignored unless INSECURE
-                byte[] mac = MAC.mac(buf.toByteArray());
-                dos.writeInt(- mac.length); // negative to differentiate from older form
-                dos.write(mac);
+        byte[] gz = gzip(serialized);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(gz.length + 48);
+        DataOutputStream dos = new DataOutputStream(payload);
+        if (sign) {
+            byte[] mac = mac(gz);
+            dos.writeInt(- mac.length); // negative to differentiate from older form
+            dos.write(mac);
+        }
+        dos.writeInt(gz.length);
+        dos.write(gz);
+        byte[] base64 = Base64.encodeBase64(payload.toByteArray());
+
+        byte[] encoded = new byte[PREAMBLE.length + base64.length + POSTAMBLE.length];
+        System.arraycopy(PREAMBLE, 0, encoded, 0, PREAMBLE.length);
+        System.arraycopy(base64, 0, encoded, PREAMBLE.length, base64.length);
+        System.arraycopy(POSTAMBLE, 0, encoded, PREAMBLE.length + base64.length, POSTAMBLE.length);
+
+        if (key != null) {
+            synchronized (ENCODED) {
+                ENCODED.put(key, encoded);
             }
-            dos.writeInt(buf.size());
-            buf.writeTo(dos);
-        } finally {
-            dos.close();
         }
-        buf2.write(POSTAMBLE);
-        return buf2;
+        return encoded;
     }
 
     /**
      * Works like {@link #encodeTo(Writer)} but obtain the result as a string.
      */
     public String encode() throws IOException {
-        return encodeToBytes().toString();
+        return new String(encodeToBytes());
     }
 
     /**
@@ -245,20 +286,38 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
             if (!Arrays.equals(postamble,POSTAMBLE))
                 return null;    // not a valid postamble
 
+            Bytes key = null;
             if (mac == null) {
                 if (!INSECURE) {
                     throw new IOException("Refusing to deserialize unsigned note from an old log.");
                 }
-            } else if (!MAC.checkMac(buf, mac)) {
-                throw new IOException("MAC mismatch");
+            } else {
+                key = new Bytes(buf);
+                Decoded d;
+                synchronized (DECODED) {
+                    d = DECODED.get(key);
+                }
+                if (d != null && Arrays.equals(d.mac, mac)) {
+                    // already verified
+                    return d.note != null ? d.note : deserialize(d.serialized);
+                }
+                if (!Arrays.equals(mac(buf), mac)) {
+                    throw new IOException("MAC mismatch");
+                }
             }
 
-            Jenkins jenkins = Jenkins.getInstance();
-            try (ObjectInputStream ois = new ObjectInputStreamEx(new GZIPInputStream(new ByteArrayInputStream(buf)),
-                    jenkins != null ? jenkins.pluginManager.uberClassLoader : ConsoleNote.class.getClassLoader(),
-                    ClassFilter.DEFAULT)) {
-                return (ConsoleNote) ois.readObject();
+            byte[] serialized;
+            try (InputStream gz = new GZIPInputStream(new ByteArrayInputStream(buf))) {
+                serialized = IOUtils.toByteArray(gz);
             }
+            ConsoleNote note = deserialize(serialized);
+            if (key != null) {
+                Decoded d = SHAREABLE.get(note.getClass()) ? new Decoded(mac, note, null) : new Decoded(mac, null, serialized);
+                synchronized (DECODED) {
+                    DECODED.put(key, d);
+                }
+            }
+            return note;
         } catch (Error e) {
             // for example, bogus 'sz' can result in OutOfMemoryError.
             // package that up as IOException so that the caller won't fatally die.
@@ -266,6 +325,59 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
         }
     }
 
+    private static ConsoleNote deserialize(byte[] serialized) throws IOException, ClassNotFoundException {
+        Jenkins jenkins = Jenkins.getInstance();
+        try (ObjectInputStream ois = new ObjectInputStreamEx(new ByteArrayInputStream(serialized),
+                jenkins != null ? jenkins.pluginManager.uberClassLoader : ConsoleNote.class.getClassLoader(),
+                ClassFilter.DEFAULT)) {
+            return (ConsoleNote) ois.readObject();
+        }
+    }
+
+    /**
+     * Compresses into the gzip format, as {@link GZIPOutputStream} would.
+     */
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(data.length / 2 + 32);
+        buf.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        Deflater deflater = DEFLATERS.take();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] chunk = new byte[512];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                buf.write(chunk, 0, n);
+            }
+        } finally {
+            DEFLATERS.give(deflater);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeIntLE(buf, (int) crc.getValue());
+        writeIntLE(buf, data.length);
+        return buf.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream buf, int v) {
+        buf.write(v);
+        buf.write(v >> 8);
+        buf.write(v >> 16);
+        buf.write(v >> 24);
+    }
+
+    /**
+     * Same as {@code MAC.mac(data)}, without initializing a new {@link Mac} every time.
+     */
+    private static byte[] mac(byte[] data) {
+        Mac mac = MACS.take();
+        try {
+            return mac.doFinal(data);
+        } finally {
+            MACS.give(mac);
+        }
+    }
+
     /**
      * Skips the encoded console note.
      */
@@ -292,6 +404,173 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Header of a gzip stream without file name nor modification time, as written by {@link GZIPOutputStream}.
+     */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    /**
+     * Small pool of objects that are expensive to create but cannot be used by several threads at once.
+     */
+    private static abstract class Pool<T> {
+        private final ArrayDeque<T> idle = new ArrayDeque<T>();
+
+        protected abstract T create();
+
+        /**
+         * Gets an object back into its initial state.
+         *
+         * @return false if the object should rather be thrown away
+         */
+        protected boolean recycle(T t) {
+            return true;
+        }
+
+        protected void dispose(T t) {
+        }
+
+        T take() {
+            synchronized (idle) {
+                T t = idle.poll();
+                if (t != null) {
+                    return t;
+                }
+            }
+            return create();
+        }
+
+        void give(T t) {
+            if (recycle(t)) {
+                synchronized (idle) {
+                    if (idle.size() < POOL_SIZE) {
+                        idle.push(t);
+                        return;
+                    }
+                }
+            }
+            dispose(t);
+        }
+    }
+
+    private static final int POOL_SIZE = 8;
+
+    private static final Pool<Deflater> DEFLATERS = new Pool<Deflater>() {
+        @Override
+        protected Deflater create() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+
+        @Override
+        protected boolean recycle(Deflater d) {
+            d.reset();
+            return true;
+        }
+
+        @Override
+        protected void dispose(Deflater d) {
+            d.end();
+        }
+    };
+
+    private static final Pool<Mac> MACS = new Pool<Mac>() {
+        @Override
+        protected Mac create() {
+            return MAC.createMac();
+        }
+
+        @Override
+        protected boolean recycle(Mac mac) {
+            mac.reset();
+            return true;
+        }
+    };
+
+    /**
+     * Byte array usable as a hash key.
+     */
+    private static final class Bytes {
+        private final byte[] data;
+        private final int hash;
+
+        Bytes(byte[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Bytes && Arrays.equals(data, ((Bytes) o).data);
+        }
+    }
+
+    /**
+     * A note whose encoded form has been verified.
+     * We only keep the note itself if {@link #SHAREABLE}, otherwise its serialized form.
+     */
+    private static final class Decoded {
+        final byte[] mac;
+        final ConsoleNote note;
+        final byte[] serialized;
+
+        Decoded(byte[] mac, ConsoleNote note, byte[] serialized) {
+            this.mac = mac;
+            this.note = note;
+            this.serialized = serialized;
+        }
+    }
+
+    /**
+     * Recently encoded notes, from their serialized form to their signed encoded form.
+     */
+    private static final Map<Bytes,byte[]> ENCODED = new LinkedHashMap<Bytes,byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Bytes,byte[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Recently read notes, from their compressed form.
+     */
+    private static final Map<Bytes,Decoded> DECODED = new LinkedHashMap<Bytes,Decoded>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Bytes,Decoded> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static final int CACHE_SIZE = SystemProperties.getInteger(ConsoleNote.class.getName() + ".cacheSize", 1024);
+
+    /**
+     * Whether a single instance of a note can be handed out to everyone reading it,
+     * which we assume when all its fields are final and of immutable types, like {@link HyperlinkNote}.
+     */
+    private static final ClassValue<Boolean> SHAREABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> c = type; c != ConsoleNote.class && c != null; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())) {
+                        continue;
+                    }
+                    Class<?> t = f.getType();
+                    if (!Modifier.isFinal(f.getModifiers()) || !(t.isPrimitive() || t.isEnum() || IMMUTABLE_TYPES.contains(t))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    };
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class));
+
     public static final String PREAMBLE_STR = "\u001B[8mha:";
     public static final String POSTAMBLE_STR = "\u001B[0m";
 
@@ -0,0 +1,296 @@
+package hudson.console;
+
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows the log of a running build on behalf of everyone who is watching its console.
+ *
+ * <p>
+ * Instead of each browser polling {@link AnnotatedLargeText#doProgressiveHtml} and each poll opening the log,
+ * {@link AnnotatedLargeText#doProgressiveHtmlStream} subscribes here and keeps the connection open.
+ * A single task per log reads what was appended every {@link #INTERVAL} milliseconds and hands the bytes
+ * to all the subscribers, which annotate and send them on their own.
+ *
+ * <p>
+ * A subscriber that does not keep up, more than {@link #MAX_QUEUED} bytes behind, is dropped,
+ * and so are subscribers beyond {@link #MAX_SUBSCRIBERS}; their browsers go back to polling.
+ *
+ * <p>
+ * Enabled by setting {@code hudson.console.ConsoleStream.enabled}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ConsoleStream implements Runnable {
+
+    private final Run<?, ?> run;
+    private final File log;
+    private final RandomAccessFile file;
+    /**
+     * Number of bytes read so far, all of which have been handed to the subscribers.
+     */
+    private long position;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private Future<?> task;
+    private boolean running;
+    private boolean closed;
+
+    private ConsoleStream(Run<?, ?> run, File log) throws IOException {
+        this.run = run;
+        this.log = log;
+        this.file = new RandomAccessFile(log, "r");
+        this.position = file.length();
+    }
+
+    /**
+     * Whether browsers should try to stream the console of running builds.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Starts following the log of a running build.
+     *
+     * @return null if the log cannot be streamed, in which case the browser should poll as usual
+     */
+    public static @CheckForNull Subscriber subscribe(@Nonnull Run<?, ?> run, @Nonnull File log) {
+        synchronized (STREAMS) {
+            if (!ENABLED || subscriberCount >= MAX_SUBSCRIBERS || !run.isLogUpdated()) {
+                return null;
+            }
+            ConsoleStream stream = STREAMS.get(log);
+            if (stream == null) {
+                try {
+                    stream = new ConsoleStream(run, log);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Cannot follow " + log, e);
+                    return null;
+                }
+                STREAMS.put(log, stream);
+                stream.task = Timer.get().scheduleWithFixedDelay(stream, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+            }
+            Subscriber s = stream.new Subscriber(stream.position);
+            stream.subscribers.add(s);
+            subscriberCount++;
+            return s;
+        }
+    }
+
+    /**
+     * Reads what was appended to the log since last time.
+     */
+    @Override
+    public void run() {
+        synchronized (STREAMS) {
+            if (closed) {
+                return;
+            }
+            running = true;
+        }
+        try {
+            follow();
+        } finally {
+            synchronized (STREAMS) {
+                running = false;
+                if (closed) {
+                    closeFile();
+                }
+            }
+        }
+    }
+
+    private void follow() {
+        // check before reading, so that we do not miss what is written just before the build completes
+        boolean finished = !run.isLogUpdated();
+        try {
+            long length = file.length();
+            while (position < length) {
+                byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, length - position)];
+                file.seek(position);
+                file.readFully(chunk);
+                synchronized (STREAMS) {
+                    position += chunk.length;
+                    for (Subscriber s : subscribers) {
+                        s.offer(chunk);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to follow " + log, e);
+            finished = true;
+        }
+        if (finished) {
+            synchronized (STREAMS) {
+                for (Subscriber s : subscribers) {
+                    s.end();
+                }
+                subscriberCount -= subscribers.size();
+                subscribers.clear();
+                close();
+            }
+        }
+    }
+
+    /**
+     * Stops following the log. Called with the lock held.
+     */
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        STREAMS.remove(log);
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (!running) {
+            closeFile();
+        }
+    }
+
+    private void closeFile() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * One browser following the log.
+     */
+    public final class Subscriber {
+        /**
+         * Offset in the log of the first byte this subscriber receives.
+         */
+        private final long start;
+        private final LinkedList<byte[]> chunks = new LinkedList<>();
+        private long queued;
+        private boolean ended;
+        private boolean dropped;
+
+        private Subscriber(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Offset in the log of the first byte returned by {@link #next(long)}.
+         * What precedes it needs to be read from the log by the caller.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        private synchronized void offer(byte[] chunk) {
+            if (dropped) {
+                return;
+            }
+            if (queued + chunk.length > MAX_QUEUED) {
+                dropped = true;
+                chunks.clear();
+            } else {
+                chunks.add(chunk);
+                queued += chunk.length;
+            }
+            notifyAll();
+        }
+
+        private synchronized void end() {
+            ended = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for more of the log.
+         *
+         * @return
+         *      the next bytes of the log; null if there was nothing new within the timeout;
+         *      {@link #END} once the whole log has been returned; {@link #DROPPED} if this subscriber fell too far behind
+         */
+        public synchronized @CheckForNull byte[] next(long timeout) throws InterruptedException {
+            if (chunks.isEmpty() && !ended && !dropped) {
+                wait(timeout);
+            }
+            if (dropped) {
+                return DROPPED;
+            }
+            if (!chunks.isEmpty()) {
+                byte[] chunk = chunks.removeFirst();
+                queued -= chunk.length;
+                return chunk;
+            }
+            return ended ? END : null;
+        }
+
+        /**
+         * Stops receiving the log. Must always be called.
+         */
+        public void unsubscribe() {
+            synchronized (STREAMS) {
+                if (subscribers.remove(this)) {
+                    subscriberCount--;
+                    if (subscribers.isEmpty()) {
+                        close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returned by {@link Subscriber#next(long)} once the build has completed and everything has been returned.
+     */
+    public static final byte[] END = new byte[0];
+
+    /**
+     * Returned by {@link Subscriber#next(long)} when the subscriber has been dropped for falling behind.
+     */
+    public static final byte[] DROPPED = new byte[0];
+
+    /**
+     * Logs being followed, also used as the lock for all the subscriber bookkeeping.
+     */
+    private static final Map<File, ConsoleStream> STREAMS = new HashMap<>();
+    private static int subscriberCount;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Milliseconds between two reads of a log.
+     */
+    private static final int INTERVAL = SystemProperties.getInteger(ConsoleStream.class.getName() + ".interval", 250);
+
+    /**
+     * Number of consoles that can be streamed at the same time, since each one ties up a request thread.
+     */
+    private static final int MAX_SUBSCRIBERS = SystemProperties.getInteger(ConsoleStream.class.getName() + ".maxSubscribers", 50);
+
+    /**
+     * Number of bytes a subscriber may fall behind before it is dropped.
+     */
+    private static final int MAX_QUEUED = 4 * 1024 * 1024;
+
+    static /* non-final for the script console */ boolean ENABLED = SystemProperties.getBoolean(ConsoleStream.class.getName() + ".enabled");
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleStream.class.getName());
+}
@@ -0,0 +1,358 @@
+package hudson.console;
+
+import hudson.PluginWrapper;
+import hudson.Util;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Annotated HTML of the console output of a completed build, so that it does not have to be
+ * rendered again by {@link ConsoleAnnotationOutputStream} every time someone looks at it.
+ *
+ * <p>
+ * The cache is recorded while the whole log is being rendered for a request, since the markup
+ * of notes like {@link HyperlinkNote} depends on the request. It consists of {@code log.html}, holding
+ * the HTML as UTF-8, and {@code log.html.idx}, holding the key the HTML is valid for (the log length and
+ * a digest of the annotators and plugins in use) followed by checkpoints: pairs of offsets of a line start
+ * in the log and of the HTML of that line. A request from an arbitrary offset is served by rendering up to
+ * the next checkpoint, then copying the HTML from there.
+ *
+ * <p>
+ * Enabled by setting {@code hudson.console.HtmlConsoleCache.enabled}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class HtmlConsoleCache implements Closeable {
+
+    private final File html;
+    private final RandomAccessFile index;
+    /**
+     * Offset of the first checkpoint in {@link #index}.
+     */
+    private final long checkpointsOffset;
+    private final int size;
+
+    private HtmlConsoleCache(File html, RandomAccessFile index, long checkpointsOffset, int size) {
+        this.html = html;
+        this.index = index;
+        this.checkpointsOffset = checkpointsOffset;
+        this.size = size;
+    }
+
+    /**
+     * Opens the cache in the given build directory.
+     *
+     * @return null if there is no cache, or it was recorded for a different log or a different set of annotators
+     */
+    public static @CheckForNull HtmlConsoleCache open(@Nonnull File dir, long logLength, @Nonnull String key) {
+        File html = new File(dir, HTML);
+        File indexFile = new File(dir, INDEX);
+        if (!html.isFile() || !indexFile.isFile()) {
+            return null;
+        }
+        RandomAccessFile index = null;
+        try {
+            index = new RandomAccessFile(indexFile, "r");
+            if (index.readInt() != MAGIC || !index.readUTF().equals(key) || index.readLong() != logLength) {
+                return null;
+            }
+            int size = index.readInt();
+            long checkpointsOffset = index.getFilePointer();
+            if (size <= 0 || index.length() != checkpointsOffset + size * 16L) {
+                return null;
+            }
+            HtmlConsoleCache cache = new HtmlConsoleCache(html, index, checkpointsOffset, size);
+            index = null;
+            return cache;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Ignoring the console cache in " + dir, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(index);
+        }
+    }
+
+    /**
+     * Finds the first checkpoint at or after the given offset in the log.
+     *
+     * @return {log offset, HTML offset}, or null if there is no such checkpoint
+     */
+    public @CheckForNull long[] findCheckpoint(long start) throws IOException {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (checkpoint(mid)[0] < start) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < size ? checkpoint(lo) : null;
+    }
+
+    private long[] checkpoint(int i) throws IOException {
+        index.seek(checkpointsOffset + i * 16L);
+        return new long[] {index.readLong(), index.readLong()};
+    }
+
+    /**
+     * Copies the cached HTML from the given offset to the end.
+     */
+    public void writeHtmlTo(long htmlOffset, @Nonnull Writer w) throws IOException {
+        try (InputStream in = new FileInputStream(html)) {
+            IOUtils.skipFully(in, htmlOffset);
+            IOUtils.copy(new InputStreamReader(in, UTF_8), w);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+
+    /**
+     * Whether the console of completed builds should be cached.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Computes the key that a cache recorded for the given request is valid for, besides the log length.
+     */
+    public static @Nonnull String getKey(@Nonnull StaplerRequest req) {
+        StringBuilder b = new StringBuilder(Jenkins.VERSION).append(' ').append(req.getContextPath());
+        for (ConsoleAnnotatorFactory f : ConsoleAnnotatorFactory.all()) {
+            b.append(' ').append(f.getClass().getName());
+        }
+        for (PluginWrapper p : Jenkins.getInstance().getPluginManager().getPlugins()) {
+            if (p.isActive()) {
+                b.append(' ').append(p.getShortName()).append(':').append(p.getVersion());
+            }
+        }
+        return Util.getDigestOf(b.toString());
+    }
+
+    /**
+     * Starts recording a new cache while the whole log gets rendered.
+     *
+     * @return null if the cache cannot be written
+     */
+    public static @CheckForNull Recorder record(@Nonnull File dir, long logLength, @Nonnull String key) {
+        try {
+            return new Recorder(dir, logLength, key);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to create the console cache in " + dir, e);
+            return null;
+        }
+    }
+
+    /**
+     * Tees the HTML rendered from the log into a new cache.
+     *
+     * <p>
+     * The {@link ConsoleAnnotationOutputStream} doing the rendering must write to {@link #tee(Writer)},
+     * and the log must be fed to it through {@link #wrap(OutputStream)}, so that we know where lines start.
+     * Failures to write the cache are not reported to the caller, we just end up without a cache.
+     */
+    public static final class Recorder {
+        private final File dir;
+        private final long logLength;
+        private final String key;
+        private final File tmp;
+        private final CountingOutputStream counter;
+        private final Writer cache;
+        private long[] checkpoints = new long[64];
+        private int size;
+        private boolean failed;
+
+        private Recorder(File dir, long logLength, String key) throws IOException {
+            this.dir = dir;
+            this.logLength = logLength;
+            this.key = key;
+            this.tmp = File.createTempFile(HTML, ".tmp", dir);
+            this.counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            this.cache = new OutputStreamWriter(counter, UTF_8);
+            checkpoint(0);
+        }
+
+        private void checkpoint(long logOffset) {
+            if (failed) {
+                return;
+            }
+            try {
+                cache.flush();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            if (size * 2 == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+            }
+            checkpoints[size * 2] = logOffset;
+            checkpoints[size * 2 + 1] = counter.getByteCount();
+            size++;
+        }
+
+        private void fail(IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the console cache in " + dir, e);
+            failed = true;
+        }
+
+        /**
+         * Decorates the writer that receives the HTML so that it also goes to the cache.
+         */
+        public @Nonnull Writer tee(@Nonnull final Writer w) {
+            return new Writer() {
+                @Override
+                public void write(char[] cbuf, int off, int len) throws IOException {
+                    w.write(cbuf, off, len);
+                    if (!failed) {
+                        try {
+                            cache.write(cbuf, off, len);
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                    }
+                }
+
+                @Override
+                public void write(String str, int off, int len) throws IOException {
+                    w.write(str, off, len);
+                    if (!failed) {
+                        try {
+                            cache.write(str, off, len);
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    w.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    w.close();
+                }
+            };
+        }
+
+        /**
+         * Decorates the stream that receives the log, to record checkpoints at line boundaries.
+         */
+        public @Nonnull OutputStream wrap(@Nonnull OutputStream out) {
+            return new FilterOutputStream(out) {
+                private long pos;
+                private long last;
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    pos++;
+                    if (b == '\n' && pos - last >= INTERVAL) {
+                        checkpoint(last = pos);
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    int from = off;
+                    for (int i = off; i < off + len; i++) {
+                        long next = pos + (i - off) + 1;
+                        if (b[i] == '\n' && next - last >= INTERVAL) {
+                            // the line is rendered as soon as its end is written
+                            out.write(b, from, i + 1 - from);
+                            checkpoint(last = next);
+                            from = i + 1;
+                        }
+                    }
+                    out.write(b, from, off + len - from);
+                    pos += len;
+                }
+            };
+        }
+
+        /**
+         * Completes the cache, if the whole log has been rendered.
+         *
+         * @param end
+         *      the offset in the log where rendering stopped, or -1 if it failed
+         */
+        public void commit(long end) {
+            File indexTmp = new File(tmp.getPath() + ".idx");
+            try {
+                cache.close();
+                if (failed || end != logLength) {
+                    return;
+                }
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexTmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeUTF(key);
+                    out.writeLong(logLength);
+                    out.writeInt(size);
+                    for (int i = 0; i < size * 2; i++) {
+                        out.writeLong(checkpoints[i]);
+                    }
+                }
+                File html = new File(dir, HTML);
+                File index = new File(dir, INDEX);
+                // a new log.html may be paired with a stale index for a moment, but never the other way around
+                if (!tmp.renameTo(html) && !(html.delete() && tmp.renameTo(html))) {
+                    throw new IOException("Failed to rename " + tmp);
+                }
+                if (!indexTmp.renameTo(index) && !(index.delete() && indexTmp.renameTo(index))) {
+                    throw new IOException("Failed to rename " + indexTmp);
+                }
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                tmp.delete();
+                indexTmp.delete();
+            }
+        }
+    }
+
+    private static final String HTML = "log.html";
+    private static final String INDEX = "log.html.idx";
+    private static final int MAGIC = 0x4a48544d; // "JHTM"
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Number of bytes of log between two checkpoints, which is roughly the most we need to render for a request.
+     */
+    private static final int INTERVAL = SystemProperties.getInteger(HtmlConsoleCache.class.getName() + ".interval", 64 * 1024);
+
+    private static final boolean ENABLED = SystemProperties.getBoolean(HtmlConsoleCache.class.getName() + ".enabled");
+
+    private static final Logger LOGGER = Logger.getLogger(HtmlConsoleCache.class.getName());
+}
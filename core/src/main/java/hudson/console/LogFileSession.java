@@ -0,0 +1,107 @@
+package hudson.console;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads a range of an uncompressed log through its {@link FileChannel}, in memory bounded by a small buffer
+ * however long the log or its lines are.
+ *
+ * <p>
+ * {@link org.kohsuke.stapler.framework.io.LargeText} reads a log that is still being written forward,
+ * keeping everything after the last line end it has seen in a chain of buffers, so a long line without
+ * a line end yet is held in memory as a whole. Here the end of the last complete line is found by scanning
+ * backward from the end of the log instead, and the range is then handed to {@link FileChannel#transferTo},
+ * which avoids copying through the heap altogether when the destination is a file.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class LogFileSession implements Closeable {
+
+    private final File log;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocate(8192);
+
+    public LogFileSession(@Nonnull File log) throws IOException {
+        this.log = log;
+        this.file = new RandomAccessFile(log, "r");
+        this.channel = file.getChannel();
+    }
+
+    /**
+     * Current length of the log.
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Finds the end of the last complete line in a range of the log, scanning backward from the end of the range.
+     * Like {@link org.kohsuke.stapler.framework.io.LargeText}, both {@code \r} and {@code \n} end a line.
+     *
+     * @return
+     *      the offset right after the last line end in {@code [start, end)}, or {@code start} if there is none
+     */
+    public long lastLineEnd(long start, long end) throws IOException {
+        long pos = end;
+        while (pos > start) {
+            int len = (int) Math.min(buf.capacity(), pos - start);
+            long from = pos - len;
+            readFully(from, len);
+            for (int i = len - 1; i >= 0; i--) {
+                byte b = buf.get(i);
+                if (b == '\r' || b == '\n')
+                    return from + i + 1;
+            }
+            pos = from;
+        }
+        return start;
+    }
+
+    /**
+     * Writes the range {@code [start, end)} of the log.
+     *
+     * @return the offset after the last byte written, which is {@code end} unless the log got shorter meanwhile
+     */
+    public long transferTo(long start, long end, @Nonnull OutputStream out) throws IOException {
+        WritableByteChannel target = out instanceof FileOutputStream
+                ? ((FileOutputStream) out).getChannel()
+                : Channels.newChannel(out);
+        long pos = start;
+        while (pos < end) {
+            long n = channel.transferTo(pos, end - pos, target);
+            if (n <= 0)
+                break; // truncated meanwhile
+            pos += n;
+        }
+        return pos;
+    }
+
+    private void readFully(long from, int len) throws IOException {
+        buf.clear();
+        buf.limit(len);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, from + buf.position()) < 0)
+                throw new IOException("Unexpected end of " + log + " at " + (from + buf.position()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,346 @@
+package hudson.console;
+
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sparse index of line boundaries in a build log, kept in a sidecar file next to the log
+ * so that the tail or an arbitrary range of lines can be located without scanning the whole log.
+ *
+ * <p>
+ * The sidecar starts with the stride {@code S}, followed by the byte offsets (as longs) at which lines
+ * {@code S}, {@code 2S}, {@code 3S}... start. To find a line we seek to the nearest preceding checkpoint
+ * and scan at most {@code S} lines from there. The index is written by {@link #wrap(File, OutputStream)}
+ * while the log itself is being written. When a log has no usable index, for example because it was
+ * written by an older version, callers fall back to reading the log itself.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class LogLineIndex implements Closeable {
+
+    private final RandomAccessFile log;
+    private final RandomAccessFile index;
+    private final int stride;
+    /**
+     * Number of checkpoints that were in the index when it was opened.
+     */
+    private final long checkpoints;
+
+    private final byte[] buf = new byte[8192];
+
+    private LogLineIndex(RandomAccessFile log, RandomAccessFile index, int stride, long checkpoints) {
+        this.log = log;
+        this.index = index;
+        this.stride = stride;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Opens the index of the given log.
+     *
+     * @return null if the log has no index, or the index does not match the log
+     */
+    public static @CheckForNull LogLineIndex open(@Nonnull File logFile) {
+        File indexFile = getIndexFile(logFile);
+        if (!indexFile.isFile() || !logFile.isFile()) {
+            return null;
+        }
+        RandomAccessFile log = null, index = null;
+        try {
+            log = new RandomAccessFile(logFile, "r");
+            index = new RandomAccessFile(indexFile, "r");
+            int stride = index.readInt();
+            long checkpoints = (index.length() - 4) / 8;
+            if (stride <= 0) {
+                throw new IOException("Invalid stride " + stride);
+            }
+            if (checkpoints > 0) {
+                // make sure the log was not rewritten or truncated since the index was written
+                index.seek(4 + (checkpoints - 1) * 8);
+                long last = index.readLong();
+                if (last < 1 || last > log.length()) {
+                    throw new IOException("Index points beyond the end of " + logFile);
+                }
+                log.seek(last - 1);
+                if (log.read() != '\n') {
+                    throw new IOException("Index does not match " + logFile);
+                }
+            }
+            LogLineIndex r = new LogLineIndex(log, index, stride, checkpoints);
+            log = null;
+            index = null;
+            return r;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Ignoring the line index of " + logFile, e);
+            return null;
+        } finally {
+            closeQuietly(log);
+            closeQuietly(index);
+        }
+    }
+
+    /**
+     * Counts the lines in the log. A trailing newline does not start another line,
+     * and an empty log has no lines.
+     */
+    public long getLineCount() throws IOException {
+        long count = checkpoints * stride;
+        long pos = checkpoints == 0 ? 0 : checkpoint(checkpoints - 1);
+        long len = log.length();
+        int lastByte = '\n';
+        log.seek(pos);
+        while (pos < len) {
+            int n = log.read(buf, 0, (int) Math.min(buf.length, len - pos));
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '\n') {
+                    count++;
+                }
+            }
+            lastByte = buf[n - 1];
+            pos += n;
+        }
+        if (lastByte != '\n') {
+            count++; // incomplete last line
+        }
+        return count;
+    }
+
+    /**
+     * Gets the byte offset at which the given (0-origin) line starts.
+     *
+     * @return the length of the log if there are not that many lines
+     */
+    public long getLineOffset(long line) throws IOException {
+        long k = Math.min(line / stride, checkpoints);
+        long pos = k == 0 ? 0 : checkpoint(k - 1);
+        return skipLines(pos, line - k * stride);
+    }
+
+    /**
+     * Reads up to {@code max} lines starting at the given line, without their line terminators.
+     * Carriage returns are dropped. Console notes are left in place.
+     */
+    public @Nonnull List<String> readLines(long start, int max, @Nonnull Charset charset) throws IOException {
+        List<String> lines = new ArrayList<>(Math.min(max, 128));
+        if (max <= 0) {
+            return lines;
+        }
+        long pos = getLineOffset(start);
+        long len = log.length();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        log.seek(pos);
+        while (pos < len && lines.size() < max) {
+            int n = log.read(buf, 0, (int) Math.min(buf.length, len - pos));
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n && lines.size() < max; i++) {
+                byte b = buf[i];
+                if (b == '\n') {
+                    lines.add(new String(line.toByteArray(), charset));
+                    line.reset();
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            pos += n;
+        }
+        if (lines.size() < max && line.size() > 0) {
+            lines.add(new String(line.toByteArray(), charset));
+        }
+        return lines;
+    }
+
+    private long checkpoint(long k) throws IOException {
+        index.seek(4 + k * 8);
+        return index.readLong();
+    }
+
+    private long skipLines(long pos, long lines) throws IOException {
+        long len = log.length();
+        log.seek(pos);
+        while (lines > 0 && pos < len) {
+            int n = log.read(buf, 0, (int) Math.min(buf.length, len - pos));
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '\n' && --lines == 0) {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return lines == 0 ? pos : len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            log.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Gets the sidecar index file of the given log.
+     */
+    public static @Nonnull File getIndexFile(@Nonnull File logFile) {
+        return new File(logFile.getPath() + "-index");
+    }
+
+    /**
+     * Decorates the stream that writes the log so that the index gets written alongside it.
+     *
+     * <p>
+     * The given stream must write to the log file itself, as the index records byte offsets in that file.
+     * The log is only indexed if it is written from the beginning.
+     */
+    public static @Nonnull OutputStream wrap(@Nonnull File logFile, @Nonnull OutputStream out) {
+        File indexFile = getIndexFile(logFile);
+        if (!ENABLED || logFile.length() > 0) {
+            indexFile.delete();
+            return out;
+        }
+        try {
+            DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            index.writeInt(STRIDE);
+            return new IndexingOutputStream(out, index, indexFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to create " + indexFile, e);
+            indexFile.delete();
+            return out;
+        }
+    }
+
+    private static final class IndexingOutputStream extends FilterOutputStream {
+        private final File indexFile;
+        private DataOutputStream index;
+        private long pos;
+        private long lines;
+
+        IndexingOutputStream(OutputStream out, DataOutputStream index, File indexFile) {
+            super(out);
+            this.index = index;
+            this.indexFile = indexFile;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            pos++;
+            if (b == '\n') {
+                newline(pos);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            for (int i = 0; i < len; i++) {
+                if (b[off + i] == '\n') {
+                    newline(pos + i + 1);
+                }
+            }
+            pos += len;
+        }
+
+        /**
+         * @param next
+         *      offset at which the next line starts
+         */
+        private void newline(long next) {
+            if (++lines % STRIDE != 0 || index == null) {
+                return;
+            }
+            try {
+                index.writeLong(next);
+            } catch (IOException e) {
+                abandon(e);
+            }
+        }
+
+        /**
+         * Problems with the index must never break the log itself.
+         */
+        private void abandon(IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write " + indexFile, e);
+            closeQuietly(index);
+            index = null;
+            indexFile.delete();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            if (index != null) {
+                try {
+                    index.flush();
+                } catch (IOException e) {
+                    abandon(e);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                if (index != null) {
+                    try {
+                        index.close();
+                    } catch (IOException e) {
+                        abandon(e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Whether new build logs get indexed.
+     */
+    private static final boolean ENABLED = SystemProperties.getBoolean(LogLineIndex.class.getName() + ".enabled", true);
+
+    /**
+     * Number of lines between two checkpoints.
+     */
+    private static final int STRIDE = Math.max(1, SystemProperties.getInteger(LogLineIndex.class.getName() + ".stride", 128));
+
+    private static final Logger LOGGER = Logger.getLogger(LogLineIndex.class.getName());
+}
@@ -47,18 +47,25 @@ import hudson.util.PersistedList;
 import hudson.util.RunList;
 import hudson.util.XStream2;
 import java.io.EOFException;
+import jenkins.fingerprints.FileFingerprintStorage;
+import jenkins.fingerprints.FingerprintStorage;
 import jenkins.model.FingerprintFacet;
 import jenkins.model.Jenkins;
 import jenkins.model.TransientFingerprintFacetFactory;
 import org.apache.commons.lang.StringUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -69,6 +76,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.CheckForNull;
@@ -342,23 +350,70 @@ public class Fingerprint implements ModelObject, Saveable {
 
     /**
      * Set of {@link Range}s. Mutable.
+     *
+     * <p>
+     * The ranges are kept as a packed array of {@code start,end} pairs, which is never modified once published;
+     * updates build a new array and install it with a compare-and-set, so reads never block and writers do not
+     * hold a lock while scanning.
      */
     @ExportedBean(defaultVisibility=3)
     public static final class RangeSet {
-        // sorted
-        private final List<Range> ranges;
+        private static final int[] EMPTY = new int[0];
+        private static final AtomicReferenceFieldUpdater<RangeSet,int[]> BOUNDS
+                = AtomicReferenceFieldUpdater.newUpdater(RangeSet.class, int[].class, "bounds");
+
+        /**
+         * {@code start0,end0,start1,end1,...}, normally sorted. Never modified in place.
+         */
+        private volatile int[] bounds;
+
+        /**
+         * False once the ranges are known not to be sorted and disjoint (which can happen with
+         * {@link #fromString(String, boolean)}), in which case lookups cannot use binary search.
+         * Never goes back to true.
+         */
+        private volatile boolean sorted;
 
         public RangeSet() {
-            this(new ArrayList<Range>());
+            this(EMPTY);
+        }
+
+        private RangeSet(int[] bounds) {
+            this.bounds = bounds;
+            this.sorted = isSorted(bounds);
         }
 
         private RangeSet(List<Range> data) {
-            this.ranges = data;
+            this(toBounds(data));
         }
 
         private RangeSet(Range initial) {
-            this();
-            ranges.add(initial);
+            this(new int[] {initial.start, initial.end});
+        }
+
+        private static int[] toBounds(List<Range> data) {
+            int[] b = new int[data.size() * 2];
+            for (int i = 0; i < data.size(); i++) {
+                b[2 * i] = data.get(i).start;
+                b[2 * i + 1] = data.get(i).end;
+            }
+            return b;
+        }
+
+        private static boolean isSorted(int[] b) {
+            for (int i = 2; i < b.length; i += 2) {
+                if (b[i] < b[i - 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean update(int[] expected, int[] updated) {
+            if (expected == updated)    return true;
+            if (sorted && !isSorted(updated))
+                sorted = false; // before publishing, so that no reader binary-searches the new array
+            return BOUNDS.compareAndSet(this, expected, updated);
         }
 
         /**
@@ -377,25 +432,6 @@ public class Fingerprint implements ModelObject, Saveable {
             };
         }
 
-//        /**
-//         * List up builds.
-//         */
-//        public <J extends Job<J,R>,R extends Run<J,R>>  Iterable<R> listBuilds(final J job) {
-//            return new Iterable<R>() {
-//                public Iterator<R> iterator() {
-//                    return new Iterators.FilterIterator<R>(new AdaptedIterator<Integer,R>(listNumbers().iterator()) {
-//                        protected R adapt(Integer n) {
-//                            return job.getBuildByNumber(n);
-//                        }
-//                    }) {
-//                        protected boolean filter(R r) {
-//                            return r!=null;
-//                        }
-//                    };
-//                }
-//            };
-//        }
-
         /**
          * List all numbers in this range set in the descending order.
          */
@@ -416,97 +452,152 @@ public class Fingerprint implements ModelObject, Saveable {
          * Gets all the ranges.
          */
         @Exported
-        public synchronized List<Range> getRanges() {
-            return new ArrayList<Range>(ranges);
+        public List<Range> getRanges() {
+            int[] b = bounds;
+            List<Range> r = new ArrayList<Range>(b.length / 2);
+            for (int i = 0; i < b.length; i += 2) {
+                r.add(new Range(b[i], b[i + 1]));
+            }
+            return r;
         }
 
         /**
          * Expands the range set to include the given value.
          * If the set already includes this number, this will be a no-op.
          */
-        public synchronized void add(int n) {
-            for( int i=0; i<ranges.size(); i++ ) {
-                Range r = ranges.get(i);
-                if(r.includes(n))   return; // already included
-                if(r.end==n) {
-                    ranges.set(i,r.expandRight());
-                    checkCollapse(i);
-                    return;
+        public void add(int n) {
+            int[] b;
+            do {
+                b = bounds;
+            } while (!update(b, add(b, n)));
+        }
+
+        private int[] add(int[] b, int n) {
+            int size = b.length / 2;
+            // ranges that end before n are not affected
+            for (int i = sorted ? firstEndingAtOrAfter(b, n) : 0; i < size; i++) {
+                int start = b[2 * i], end = b[2 * i + 1];
+                if (start <= n && n < end)  return b; // already included
+                if (end == n) {
+                    int[] r = b.clone();
+                    r[2 * i + 1] = end + 1;
+                    return collapse(r, i);
                 }
-                if(r.start==n+1) {
-                    ranges.set(i,r.expandLeft());
-                    checkCollapse(i-1);
-                    return;
+                if (start == n + 1) {
+                    int[] r = b.clone();
+                    r[2 * i] = start - 1;
+                    return collapse(r, i - 1);
                 }
-                if(r.isBiggerThan(n)) {
+                if (n < start) {
                     // needs to insert a single-value Range
-                    ranges.add(i,new Range(n,n+1));
-                    return;
+                    return new Pairs(b).insert(i, n, n + 1).toArray();
                 }
             }
-
-            ranges.add(new Range(n,n+1));
+            return new Pairs(b).insert(size, n, n + 1).toArray();
         }
 
-        public synchronized void addAll(int... n) {
-            for (int i : n)
-                add(i);
+        public void addAll(int... n) {
+            int[] b, r;
+            do {
+                b = bounds;
+                r = b;
+                for (int i : n)
+                    r = add(r, i);
+            } while (!update(b, r));
         }
 
-
-        private void checkCollapse(int i) {
-            if(i<0 || i==ranges.size()-1)     return;
-            Range lhs = ranges.get(i);
-            Range rhs = ranges.get(i+1);
-            if(lhs.isAdjacentTo(rhs)) {
+        /**
+         * Merges the ranges at {@code i} and {@code i+1} if they are adjacent.
+         */
+        private static int[] collapse(int[] b, int i) {
+            if (i < 0 || i == b.length / 2 - 1)     return b;
+            if (b[2 * i + 1] == b[2 * i + 2]) {
                 // collapsed
-                Range r = new Range(lhs.start,rhs.end);
-                ranges.set(i,r);
-                ranges.remove(i+1);
+                Pairs p = new Pairs(b);
+                p.setEnd(i, b[2 * i + 3]);
+                p.remove(i + 1);
+                return p.toArray();
             }
+            return b;
         }
 
-        public synchronized boolean includes(int i) {
-            for (Range r : ranges) {
-                if(r.includes(i))
+        /**
+         * Index of the first range whose end is at or after n, in a sorted array.
+         */
+        private static int firstEndingAtOrAfter(int[] b, int n) {
+            int lo = 0, hi = b.length / 2;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (b[2 * mid + 1] < n) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        public boolean includes(int i) {
+            int[] b = bounds;
+            if (sorted) {
+                int idx = firstEndingAtOrAfter(b, i + 1);
+                return idx < b.length / 2 && b[2 * idx] <= i;
+            }
+            for (int j = 0; j < b.length; j += 2) {
+                if (b[j] <= i && i < b[j + 1])
                     return true;
             }
             return false;
         }
 
-        public synchronized void add(RangeSet that) {
+        public void add(RangeSet that) {
+            int[] t = that.bounds;
+            int[] b;
+            do {
+                b = bounds;
+            } while (!update(b, add(b, t)));
+        }
+
+        private static int[] add(int[] b, int[] t) {
+            if (t.length == 0)  return b;
+            Pairs p = new Pairs(b);
             int lhs=0,rhs=0;
-            while(lhs<this.ranges.size() && rhs<that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
+            int thatSize = t.length / 2;
+            while(lhs<p.size() && rhs<thatSize) {
+                int lstart = p.start(lhs), lend = p.end(lhs);
+                int rstart = t[2 * rhs], rend = t[2 * rhs + 1];
 
                 // no overlap
-                if(lr.end<rr.start) {
+                if(lend<rstart) {
                     lhs++;
                     continue;
                 }
-                if(rr.end<lr.start) {
-                    ranges.add(lhs,rr);
+                if(rend<lstart) {
+                    p.insert(lhs, rstart, rend);
                     lhs++;
                     rhs++;
                     continue;
                 }
 
                 // overlap. merge two
-                Range m = lr.combine(rr);
+                int mstart = Math.min(lstart, rstart), mend = Math.max(lend, rend);
                 rhs++;
 
                 // since ranges[lhs] is expanded, it might overlap with others in this.ranges
-                while(lhs+1<this.ranges.size() && !m.isIndependent(this.ranges.get(lhs+1))) {
-                    m = m.combine(this.ranges.get(lhs+1));
-                    this.ranges.remove(lhs+1);
+                while(lhs+1<p.size() && !(mend<p.start(lhs+1) || p.end(lhs+1)<mstart)) {
+                    mstart = Math.min(mstart, p.start(lhs+1));
+                    mend = Math.max(mend, p.end(lhs+1));
+                    p.remove(lhs+1);
                 }
 
-                this.ranges.set(lhs,m);
+                p.set(lhs, mstart, mend);
             }
 
             // if anything is left in that.ranges, add them all
-            this.ranges.addAll(that.ranges.subList(rhs,that.ranges.size()));
+            for (; rhs < thatSize; rhs++) {
+                p.insert(p.size(), t[2 * rhs], t[2 * rhs + 1]);
+            }
+            return p.toArray();
         }
 
         /**
@@ -514,44 +605,45 @@ public class Fingerprint implements ModelObject, Saveable {
          *
          * @return true if this range set was modified as a result.
          */
-        public synchronized boolean retainAll(RangeSet that) {
-            List<Range> intersection = new ArrayList<Range>();
+        public boolean retainAll(RangeSet that) {
+            int[] t = that.bounds;
+            int[] b, r;
+            do {
+                b = bounds;
+                r = retainAll(b, t);
+                if (Arrays.equals(b, r))    return false;
+            } while (!update(b, r));
+            return true;
+        }
+
+        private static int[] retainAll(int[] b, int[] t) {
+            Pairs intersection = new Pairs(EMPTY);
 
             int lhs=0,rhs=0;
-            while(lhs<this.ranges.size() && rhs<that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
+            while(lhs<b.length/2 && rhs<t.length/2) {
+                int lstart = b[2 * lhs], lend = b[2 * lhs + 1];
+                int rstart = t[2 * rhs], rend = t[2 * rhs + 1];
 
-                if(lr.end<=rr.start) {// lr has no overlap with that.ranges
+                if(lend<=rstart) {// lr has no overlap with that.ranges
                     lhs++;
                     continue;
                 }
-                if(rr.end<=lr.start) {// rr has no overlap with this.ranges
+                if(rend<=lstart) {// rr has no overlap with this.ranges
                     rhs++;
                     continue;
                 }
 
                 // overlap. figure out the intersection
-                Range v = lr.intersect(rr);
-                intersection.add(v);
+                intersection.insert(intersection.size(), Math.max(lstart, rstart), Math.min(lend, rend));
 
                 // move on to the next pair
-                if (lr.end<rr.end) {
+                if (lend<rend) {
                     lhs++;
                 } else {
                     rhs++;
                 }
             }
-
-            boolean same = this.ranges.equals(intersection);
-
-            if (!same) {
-                this.ranges.clear();
-                this.ranges.addAll(intersection);
-                return true;
-            } else {
-                return false;
-            }
+            return intersection.toArray();
         }
 
         /**
@@ -559,30 +651,44 @@ public class Fingerprint implements ModelObject, Saveable {
          *
          * @return true if this range set was modified as a result.
          */
-        public synchronized boolean removeAll(RangeSet that) {
+        public boolean removeAll(RangeSet that) {
+            int[] t = that.bounds;
+            int[] b, r;
+            do {
+                b = bounds;
+                r = removeAll(b, t);
+                if (r == null)  return false;   // no changes
+            } while (!update(b, r));
+            return true;
+        }
+
+        /**
+         * @return null if nothing was removed
+         */
+        private static int[] removeAll(int[] b, int[] t) {
             boolean modified = false;
-            List<Range> sub = new ArrayList<Range>();
+            Pairs p = new Pairs(b);
+            Pairs sub = new Pairs(EMPTY);
 
             int lhs=0,rhs=0;
-            while(lhs<this.ranges.size() && rhs<that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
+            while(lhs<p.size() && rhs<t.length/2) {
+                int lstart = p.start(lhs), lend = p.end(lhs);
+                int rstart = t[2 * rhs], rend = t[2 * rhs + 1];
 
-                if(lr.end<=rr.start) {// lr has no overlap with that.ranges. lr stays
-                    sub.add(lr);
+                if(lend<=rstart) {// lr has no overlap with that.ranges. lr stays
+                    sub.insert(sub.size(), lstart, lend);
                     lhs++;
                     continue;
                 }
-                if(rr.end<=lr.start) {// rr has no overlap with this.ranges
+                if(rend<=lstart) {// rr has no overlap with this.ranges
                     rhs++;
                     continue;
                 }
 
                 // some overlap between lr and rr
-                assert !lr.isDisjoint(rr);
                 modified = true;
 
-                if (rr.contains(lr)) {
+                if (rstart<=lstart && lend<=rend) {
                     // lr completely removed by rr
                     lhs++;
                     continue;
@@ -598,15 +704,14 @@ public class Fingerprint implements ModelObject, Saveable {
                 //         |------------| rr
                 //     A             (no B)
 
-                if (lr.start<rr.start) {// if A is non-empty, that will stay
-                    Range a = new Range(lr.start, rr.start);
-                    sub.add(a);
+                if (lstart<rstart) {// if A is non-empty, that will stay
+                    sub.insert(sub.size(), lstart, rstart);
                 }
 
-                if (rr.end<lr.end) {// if B is non-empty
+                if (rend<lend) {// if B is non-empty
                     // we still need to check that with that.ranges, so keep it in the place of lr.
                     // how much of them will eventually stay is up to the remainder of that.ranges
-                    this.ranges.set(lhs,new Range(rr.end,lr.end));
+                    p.set(lhs, rend, lend);
                     rhs++;
                 } else {
                     // if B is empty, we are done considering lr
@@ -614,22 +719,22 @@ public class Fingerprint implements ModelObject, Saveable {
                 }
             }
 
-            if (!modified)  return false;   // no changes
+            if (!modified)  return null;
 
             // whatever that remains in lhs will survive
-            sub.addAll(this.ranges.subList(lhs,this.ranges.size()));
-
-            this.ranges.clear();
-            this.ranges.addAll(sub);
-            return true;
+            for (; lhs < p.size(); lhs++) {
+                sub.insert(sub.size(), p.start(lhs), p.end(lhs));
+            }
+            return sub.toArray();
         }
 
         @Override
-        public synchronized String toString() {
+        public String toString() {
+            int[] b = bounds;
             StringBuilder buf = new StringBuilder();
-            for (Range r : ranges) {
+            for (int i = 0; i < b.length; i += 2) {
                 if(buf.length()>0)  buf.append(',');
-                buf.append(r);
+                buf.append('[').append(b[i]).append(',').append(b[i + 1]).append(')');
             }
             return buf.toString();
         }
@@ -639,17 +744,17 @@ public class Fingerprint implements ModelObject, Saveable {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
 
-            return ranges.equals(((RangeSet) o).ranges);
+            return Arrays.equals(bounds, ((RangeSet) o).bounds);
 
         }
 
         @Override
         public int hashCode() {
-            return ranges.hashCode();
+            return Arrays.hashCode(bounds);
         }
 
-        public synchronized boolean isEmpty() {
-            return ranges.isEmpty();
+        public boolean isEmpty() {
+            return bounds.length == 0;
         }
 
         /**
@@ -657,8 +762,10 @@ public class Fingerprint implements ModelObject, Saveable {
          * <p>
          * If this range is empty, this method throws an exception.
          */
-        public synchronized int min() {
-            return ranges.get(0).start;
+        public int min() {
+            int[] b = bounds;
+            if (b.length == 0)  throw new IndexOutOfBoundsException("empty");
+            return b[0];
         }
 
         /**
@@ -666,8 +773,10 @@ public class Fingerprint implements ModelObject, Saveable {
          * <p>
          * If this range is empty, this method throws an exception.
          */
-        public synchronized int max() {
-            return ranges.get(ranges.size()-1).end;
+        public int max() {
+            int[] b = bounds;
+            if (b.length == 0)  throw new IndexOutOfBoundsException("empty");
+            return b[b.length - 1];
         }
 
         /**
@@ -677,10 +786,65 @@ public class Fingerprint implements ModelObject, Saveable {
          *
          * Note that {} is smaller than any n.
          */
-        public synchronized boolean isSmallerThan(int n) {
-            if(ranges.isEmpty())    return true;
+        public boolean isSmallerThan(int n) {
+            int[] b = bounds;
+            if(b.length == 0)    return true;
 
-            return ranges.get(ranges.size() - 1).isSmallerThan(n);
+            return b[b.length - 1] <= n;
+        }
+
+        /**
+         * Growable list of {@code start,end} pairs, to build a new {@link RangeSet#bounds}.
+         */
+        private static final class Pairs {
+            private int[] a;
+            private int size;
+
+            Pairs(int[] initial) {
+                a = Arrays.copyOf(initial, initial.length + 4);
+                size = initial.length / 2;
+            }
+
+            int size() {
+                return size;
+            }
+
+            int start(int i) {
+                return a[2 * i];
+            }
+
+            int end(int i) {
+                return a[2 * i + 1];
+            }
+
+            void set(int i, int start, int end) {
+                a[2 * i] = start;
+                a[2 * i + 1] = end;
+            }
+
+            void setEnd(int i, int end) {
+                a[2 * i + 1] = end;
+            }
+
+            Pairs insert(int i, int start, int end) {
+                if (2 * size + 2 > a.length) {
+                    a = Arrays.copyOf(a, a.length * 2 + 4);
+                }
+                System.arraycopy(a, 2 * i, a, 2 * i + 2, 2 * (size - i));
+                a[2 * i] = start;
+                a[2 * i + 1] = end;
+                size++;
+                return this;
+            }
+
+            void remove(int i) {
+                System.arraycopy(a, 2 * i + 2, a, 2 * i, 2 * (size - i - 1));
+                size--;
+            }
+
+            int[] toArray() {
+                return size == 0 ? EMPTY : Arrays.copyOf(a, 2 * size);
+            }
         }
 
         /**
@@ -688,6 +852,7 @@ public class Fingerprint implements ModelObject, Saveable {
          */
         public static RangeSet fromString(String list, boolean skipError) {
             RangeSet rs = new RangeSet();
+            Pairs pairs = new Pairs(EMPTY);
 
             // Reject malformed ranges like "1---10", "1,,,,3" etc.
             if (list.contains("--") || list.contains(",,")) {
@@ -751,7 +916,7 @@ public class Fingerprint implements ModelObject, Saveable {
                                 // ignore inverse range like "10-5"
                                 continue;
                             }
-                            rs.ranges.add(new Range(left, right+1));
+                            pairs.insert(pairs.size(), left, right+1);
                         } else {
                             if (!skipError) {
                                 throw new IllegalArgumentException(
@@ -762,7 +927,7 @@ public class Fingerprint implements ModelObject, Saveable {
                         }
                     } else {
                         int n = Integer.parseInt(s);
-                        rs.ranges.add(new Range(n,n+1));
+                        pairs.insert(pairs.size(), n, n+1);
                     }
                 } catch (NumberFormatException e) {
                     if (!skipError)
@@ -771,7 +936,7 @@ public class Fingerprint implements ModelObject, Saveable {
                     // ignore malformed text
                 }
             }
-            return rs;
+            return pairs.size() == 0 ? rs : new RangeSet(pairs.toArray());
         }
 
         static final class ConverterImpl implements Converter {
@@ -791,13 +956,14 @@ public class Fingerprint implements ModelObject, Saveable {
             }
 
             static String serialize(RangeSet src) {
-                StringBuilder buf = new StringBuilder(src.ranges.size()*10);
-                for (Range r : src.ranges) {
+                int[] b = src.bounds;
+                StringBuilder buf = new StringBuilder(b.length*5);
+                for (int i = 0; i < b.length; i += 2) {
                     if(buf.length()>0)  buf.append(',');
-                    if(r.isSingle())
-                        buf.append(r.start);
+                    if(b[i + 1]-1==b[i])
+                        buf.append(b[i]);
                     else
-                        buf.append(r.start).append('-').append(r.end-1);
+                        buf.append(b[i]).append('-').append(b[i + 1]-1);
                 }
                 return buf.toString();
             }
@@ -1241,56 +1407,29 @@ public class Fingerprint implements ModelObject, Saveable {
         if(logger.isLoggable(Level.FINE))
             start = System.currentTimeMillis();
 
-        File file = getFingerprintFile(md5sum);
-        save(file);
-        SaveableListener.fireOnChange(this, getConfigFile(file));
+        FingerprintStorage storage = FingerprintStorage.get();
+        storage.save(this);
+        if (storage instanceof FileFingerprintStorage) {
+            // other storages have no XML file to report
+            SaveableListener.fireOnChange(this, getConfigFile(getFingerprintFile(md5sum)));
+        }
 
         if(logger.isLoggable(Level.FINE))
-            logger.fine("Saving fingerprint "+file+" took "+(System.currentTimeMillis()-start)+"ms");
+            logger.fine("Saving fingerprint "+getHashString()+" took "+(System.currentTimeMillis()-start)+"ms");
     }
 
-    void save(File file) throws IOException {
+    /**
+     * Saves this fingerprint in the given XML file, regardless of the {@link FingerprintStorage} in use.
+     */
+    @Restricted(NoExternalUse.class)
+    public void save(File file) throws IOException {
         if (facets.isEmpty()) {
             file.getParentFile().mkdirs();
             // JENKINS-16301: fast path for the common case.
             AtomicFileWriter afw = new AtomicFileWriter(file);
             try {
                 PrintWriter w = new PrintWriter(afw);
-                w.println("<?xml version='1.0' encoding='UTF-8'?>");
-                w.println("<fingerprint>");
-                w.print("  <timestamp>");
-                w.print(DATE_CONVERTER.toString(timestamp));
-                w.println("</timestamp>");
-                if (original != null) {
-                    w.println("  <original>");
-                    w.print("    <name>");
-                    w.print(Util.xmlEscape(original.name));
-                    w.println("</name>");
-                    w.print("    <number>");
-                    w.print(original.number);
-                    w.println("</number>");
-                    w.println("  </original>");
-                }
-                w.print("  <md5sum>");
-                w.print(Util.toHexString(md5sum));
-                w.println("</md5sum>");
-                w.print("  <fileName>");
-                w.print(Util.xmlEscape(fileName));
-                w.println("</fileName>");
-                w.println("  <usages>");
-                for (Map.Entry<String,RangeSet> e : usages.entrySet()) {
-                    w.println("    <entry>");
-                    w.print("      <string>");
-                    w.print(Util.xmlEscape(e.getKey()));
-                    w.println("</string>");
-                    w.print("      <ranges>");
-                    w.print(RangeSet.ConverterImpl.serialize(e.getValue()));
-                    w.println("</ranges>");
-                    w.println("    </entry>");
-                }
-                w.println("  </usages>");
-                w.println("  <facets/>");
-                w.print("</fingerprint>");
+                writeFastXml(w);
                 w.flush();
                 afw.commit();
             } finally {
@@ -1302,6 +1441,72 @@ public class Fingerprint implements ModelObject, Saveable {
         }
     }
 
+    /**
+     * Writes this fingerprint in the same format as {@link #save(File)}, for storages that do not use XML files.
+     */
+    @Restricted(NoExternalUse.class)
+    public synchronized void writeXml(Writer writer) throws IOException {
+        if (facets.isEmpty()) {
+            PrintWriter w = new PrintWriter(writer);
+            writeFastXml(w);
+            w.flush();
+        } else {
+            writer.write("<?xml version='1.1' encoding='UTF-8'?>\n");
+            XSTREAM.toXML(this, writer);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Reads what {@link #writeXml(Writer)} wrote.
+     */
+    @Restricted(NoExternalUse.class)
+    public static @Nonnull Fingerprint readXml(Reader reader) throws IOException {
+        try {
+            return initFacets((Fingerprint) XSTREAM.fromXML(reader));
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to read fingerprint", e);
+        }
+    }
+
+    private void writeFastXml(PrintWriter w) {
+        w.println("<?xml version='1.0' encoding='UTF-8'?>");
+        w.println("<fingerprint>");
+        w.print("  <timestamp>");
+        w.print(DATE_CONVERTER.toString(timestamp));
+        w.println("</timestamp>");
+        if (original != null) {
+            w.println("  <original>");
+            w.print("    <name>");
+            w.print(Util.xmlEscape(original.name));
+            w.println("</name>");
+            w.print("    <number>");
+            w.print(original.number);
+            w.println("</number>");
+            w.println("  </original>");
+        }
+        w.print("  <md5sum>");
+        w.print(Util.toHexString(md5sum));
+        w.println("</md5sum>");
+        w.print("  <fileName>");
+        w.print(Util.xmlEscape(fileName));
+        w.println("</fileName>");
+        w.println("  <usages>");
+        for (Map.Entry<String,RangeSet> e : usages.entrySet()) {
+            w.println("    <entry>");
+            w.print("      <string>");
+            w.print(Util.xmlEscape(e.getKey()));
+            w.println("</string>");
+            w.print("      <ranges>");
+            w.print(RangeSet.ConverterImpl.serialize(e.getValue()));
+            w.println("</ranges>");
+            w.println("    </entry>");
+        }
+        w.println("  </usages>");
+        w.println("  <facets/>");
+        w.print("</fingerprint>");
+    }
+
     /**
      * Update references to a renamed job in the fingerprint
      */
@@ -1343,20 +1548,25 @@ public class Fingerprint implements ModelObject, Saveable {
      * Determines the file name from md5sum.
      */
     private static @Nonnull File getFingerprintFile(@Nonnull byte[] md5sum) {
-        assert md5sum.length==16;
-        return new File( Jenkins.getInstance().getRootDir(),
-            "fingerprints/"+ Util.toHexString(md5sum,0,1)+'/'+Util.toHexString(md5sum,1,1)+'/'+Util.toHexString(md5sum,2,md5sum.length-2)+".xml");
+        return FileFingerprintStorage.getFingerprintFile(md5sum);
     }
 
     /**
-     * Loads a {@link Fingerprint} from a file in the image.
-     * @return Loaded {@link Fingerprint}. Null if the config file does not exist or
+     * Loads a {@link Fingerprint} from the {@link FingerprintStorage}.
+     * @return Loaded {@link Fingerprint}. Null if it does not exist or is
      * malformed.
      */
     /*package*/ static @CheckForNull Fingerprint load(@Nonnull byte[] md5sum) throws IOException {
-        return load(getFingerprintFile(md5sum));
+        return FingerprintStorage.get().load(Util.toHexString(md5sum));
     }
-    /*package*/ static @CheckForNull Fingerprint load(@Nonnull File file) throws IOException {
+
+    /**
+     * Loads a {@link Fingerprint} from an XML file, regardless of the {@link FingerprintStorage} in use.
+     * @return Loaded {@link Fingerprint}. Null if the config file does not exist or
+     * malformed.
+     */
+    @Restricted(NoExternalUse.class)
+    public static @CheckForNull Fingerprint load(@Nonnull File file) throws IOException {
         XmlFile configFile = getConfigFile(file);
         if(!configFile.exists())
             return null;
@@ -1369,11 +1579,7 @@ public class Fingerprint implements ModelObject, Saveable {
             Fingerprint f = (Fingerprint) configFile.read();
             if(logger.isLoggable(Level.FINE))
                 logger.fine("Loading fingerprint "+file+" took "+(System.currentTimeMillis()-start)+"ms");
-            if (f.facets==null)
-                f.facets = new PersistedList<FingerprintFacet>(f);
-            for (FingerprintFacet facet : f.facets)
-                facet._setOwner(f);
-            return f;
+            return initFacets(f);
         } catch (IOException e) {
             if(file.exists() && file.length()==0) {
                 // Despite the use of AtomicFile, there are reports indicating that people often see
@@ -1396,6 +1602,14 @@ public class Fingerprint implements ModelObject, Saveable {
             throw e;
         }
     }
+    private static Fingerprint initFacets(Fingerprint f) {
+        if (f.facets==null)
+            f.facets = new PersistedList<FingerprintFacet>(f);
+        for (FingerprintFacet facet : f.facets)
+            facet._setOwner(f);
+        return f;
+    }
+
     private static String messageOfParseException(Throwable t) {
         if (t instanceof XmlPullParserException || t instanceof EOFException) {
             return t.getMessage();
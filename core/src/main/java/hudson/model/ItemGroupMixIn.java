@@ -45,6 +45,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -105,7 +106,8 @@ public abstract class ItemGroupMixIn {
                 return child.isDirectory();
             }
         });
-        CopyOnWriteMap.Tree<K,V> configurations = new CopyOnWriteMap.Tree<K,V>();
+        // collected first and copied over at once, since each put into a CopyOnWriteMap copies the whole map
+        Map<K,V> loaded = new HashMap<K,V>();
         for (File subdir : subdirs) {
             try {
                 // Try to retain the identity of an existing child object if we can.
@@ -121,12 +123,14 @@ public abstract class ItemGroupMixIn {
                 } else {
                     item.onLoad(parent, subdir.getName());
                 }
-                configurations.put(key.call(item), item);
+                loaded.put(key.call(item), item);
             } catch (Exception e) {
                 Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + subdir, e);
             }
         }
 
+        CopyOnWriteMap.Tree<K,V> configurations = new CopyOnWriteMap.Tree<K,V>();
+        configurations.replaceBy(loaded);
         return configurations;
     }
 
@@ -27,6 +27,7 @@ import antlr.ANTLRException;
 import static hudson.Util.fixNull;
 
 import hudson.model.labels.LabelAtom;
+import hudson.model.labels.LabelAtomSet;
 import hudson.model.labels.LabelExpression;
 import hudson.model.labels.LabelExpression.And;
 import hudson.model.labels.LabelExpression.Binary;
@@ -49,6 +50,8 @@ import jenkins.model.Jenkins;
 import jenkins.model.ModelObjectWithChildren;
 import org.acegisecurity.context.SecurityContext;
 import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
@@ -110,6 +113,11 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
                 return Jenkins.getInstance().getQueue().countBuildableItemsFor(Label.this);
             }
 
+            @Override
+            protected boolean isQueueLengthIndexed() {
+                return true;
+            }
+
             @Override
             protected Set<Node> getNodes() {
                 return Label.this.getNodes();
@@ -183,8 +191,26 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
         });
     }
 
+    /**
+     * Evaluates whether the label expression is true when an entity owns the given set of atoms.
+     *
+     * <p>
+     * The core {@link LabelAtom} and {@link LabelExpression} types evaluate this directly against the bits of the set;
+     * other implementations fall back to {@link #matches(VariableResolver)}.
+     *
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public boolean matches(LabelAtomSet atoms) {
+        return matches(atoms.asResolver());
+    }
+
+    /**
+     * Evaluates whether the label expression is true for the given node.
+     * Uses the {@linkplain Node#getLabelAtomSet() cached atoms} of the node.
+     */
     public final boolean matches(Node n) {
-        return matches(n.getAssignedLabels());
+        return matches(n.getLabelAtomSet());
     }
 
     /**
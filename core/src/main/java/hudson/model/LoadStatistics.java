@@ -43,6 +43,8 @@ import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.renderer.category.LineAndShapeRenderer;
 import org.jfree.data.category.CategoryDataset;
 import org.jfree.ui.RectangleInsets;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.export.ExportedBean;
 import org.kohsuke.stapler.export.Exported;
@@ -332,6 +334,9 @@ public abstract class LoadStatistics {
      */
     public LoadStatisticsSnapshot computeSnapshot() {
         if (modern) {
+            if (isQueueLengthIndexed()) {
+                return computeSnapshot(computeQueueLength());
+            }
             return computeSnapshot(Jenkins.getInstance().getQueue().getBuildableItems());
         } else {
             int t = computeTotalExecutors();
@@ -348,13 +353,6 @@ public abstract class LoadStatistics {
      * @since 1.607
      */
     protected LoadStatisticsSnapshot computeSnapshot(Iterable<Queue.BuildableItem> queue) {
-        final LoadStatisticsSnapshot.Builder builder = LoadStatisticsSnapshot.builder();
-        final Iterable<Node> nodes = getNodes();
-        if (nodes != null) {
-            for (Node node : nodes) {
-                builder.with(node);
-            }
-        }
         int q = 0;
         if (queue != null) {
             for (Queue.BuildableItem item : queue) {
@@ -365,7 +363,28 @@ public abstract class LoadStatistics {
                 }
             }
         }
-        return builder.withQueueLength(q).build();
+        return computeSnapshot(q);
+    }
+
+    private LoadStatisticsSnapshot computeSnapshot(int queueLength) {
+        final LoadStatisticsSnapshot.Builder builder = LoadStatisticsSnapshot.builder();
+        final Iterable<Node> nodes = getNodes();
+        if (nodes != null) {
+            for (Node node : nodes) {
+                builder.with(node);
+            }
+        }
+        return builder.withQueueLength(queueLength).build();
+    }
+
+    /**
+     * Whether {@link #computeQueueLength()} counts exactly the subtasks accepted by {@link #matches(Queue.Item, SubTask)}
+     * using the per-label index kept by {@link Queue}, in which case {@link #computeSnapshot()} uses it
+     * instead of iterating over all the buildable items.
+     */
+    @Restricted(NoExternalUse.class)
+    protected boolean isQueueLengthIndexed() {
+        return false;
     }
 
     /**
@@ -394,13 +413,17 @@ public abstract class LoadStatistics {
 
             // update statistics on agents
             for( Label l : j.getLabels() ) {
-                l.loadStatistics.updateCounts(l.loadStatistics.computeSnapshot(bis));
+                l.loadStatistics.updateCounts(computeSnapshot(l.loadStatistics, bis));
             }
 
             // update statistics of the entire system
-            j.unlabeledLoad.updateCounts(j.unlabeledLoad.computeSnapshot(bis));
+            j.unlabeledLoad.updateCounts(computeSnapshot(j.unlabeledLoad, bis));
+
+            j.overallLoad.updateCounts(computeSnapshot(j.overallLoad, bis));
+        }
 
-            j.overallLoad.updateCounts(j.overallLoad.computeSnapshot(bis));
+        private LoadStatisticsSnapshot computeSnapshot(LoadStatistics stats, List<Queue.BuildableItem> bis) {
+            return stats.modern && stats.isQueueLengthIndexed() ? stats.computeSnapshot() : stats.computeSnapshot(bis);
         }
 
         private int count(List<Queue.BuildableItem> bis, Label l) {
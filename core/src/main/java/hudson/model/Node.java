@@ -34,6 +34,7 @@ import hudson.Util;
 import hudson.model.Descriptor.FormException;
 import hudson.model.Queue.Task;
 import hudson.model.labels.LabelAtom;
+import hudson.model.labels.LabelAtomSet;
 import hudson.model.queue.CauseOfBlockage;
 import hudson.remoting.Callable;
 import hudson.remoting.VirtualChannel;
@@ -65,6 +66,8 @@ import jenkins.util.io.OnMaster;
 import net.sf.json.JSONObject;
 import org.acegisecurity.Authentication;
 import org.jvnet.localizer.Localizable;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.BindInterceptor;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
@@ -312,6 +315,57 @@ public abstract class Node extends AbstractModelObject implements Reconfigurable
         return result;
     }
 
+    /**
+     * Returns {@link #getAssignedLabels()} as a {@link LabelAtomSet}, for cheap {@link Label#matches(Node)} evaluation.
+     *
+     * <p>
+     * The atoms of {@link #getLabelString()} and the {@link #getSelfLabel() self label} are computed once and reused
+     * until the label string changes or {@link #invalidateLabelAtomSet()} is called.
+     * Labels from {@link LabelFinder}s may change at any time, so they are looked up on every call.
+     * Nodes that override {@link #getAssignedLabels()} get no caching at all.
+     *
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @Nonnull LabelAtomSet getLabelAtomSet() {
+        if (CUSTOM_ASSIGNED_LABELS.get(getClass())) {
+            return LabelAtomSet.of(getAssignedLabels(), null);
+        }
+        LabelAtomSet atoms = labelAtomSet;
+        String labelString = getLabelString();
+        if (atoms == null || !atoms.isUpToDate(labelString)) {
+            Set<LabelAtom> r = Label.parse(labelString);
+            r.add(getSelfLabel());
+            labelAtomSet = atoms = LabelAtomSet.of(r, labelString);
+        }
+        return atoms.with(getDynamicLabels());
+    }
+
+    /**
+     * Forces {@link #getLabelAtomSet()} to be recomputed, for example after the node was reconfigured in place.
+     *
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public void invalidateLabelAtomSet() {
+        labelAtomSet = null;
+    }
+
+    /**
+     * The atoms of {@link #getLabelString()} and {@link #getSelfLabel()}.
+     */
+    private transient volatile LabelAtomSet labelAtomSet;
+
+    /**
+     * Whether a {@link Node} type overrides {@link #getAssignedLabels()}, whose result then cannot be predicted.
+     */
+    private static final ClassValue<Boolean> CUSTOM_ASSIGNED_LABELS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return Util.isOverridden(Node.class, type, "getAssignedLabels");
+        }
+    };
+
 
     /**
      * Returns the manually configured label for a node. The list of assigned
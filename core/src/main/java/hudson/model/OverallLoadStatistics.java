@@ -70,6 +70,11 @@ public class OverallLoadStatistics extends LoadStatistics {
         return Jenkins.getInstance().getQueue().countBuildableItems();
     }
 
+    @Override
+    protected boolean isQueueLengthIndexed() {
+        return true;
+    }
+
     @Override
     protected Iterable<Node> getNodes() {
         return Jenkins.getActiveInstance().getNodes();
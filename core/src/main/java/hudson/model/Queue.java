@@ -28,6 +28,7 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.infradna.tool.bridge_method_injector.WithBridgeMethods;
 import hudson.BulkChange;
+import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
 import hudson.Util;
@@ -46,6 +47,7 @@ import hudson.model.queue.ScheduleResult;
 import hudson.model.queue.ScheduleResult.Created;
 import hudson.model.queue.SubTask;
 import hudson.model.queue.FutureImpl;
+import hudson.model.queue.LoadPredictor;
 import hudson.model.queue.MappingWorksheet;
 import hudson.model.queue.MappingWorksheet.Mapping;
 import hudson.model.queue.QueueSorter;
@@ -62,6 +64,8 @@ import hudson.model.queue.CauseOfBlockage.BecauseLabelIsOffline;
 import hudson.model.queue.CauseOfBlockage.BecauseNodeIsBusy;
 import hudson.model.queue.WorkUnitContext;
 import hudson.security.ACL;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
 import hudson.security.AccessControlled;
 import jenkins.security.QueueItemAuthenticatorProvider;
 import jenkins.util.Timer;
@@ -93,8 +97,11 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -107,6 +114,7 @@ import javax.servlet.ServletException;
 import jenkins.model.Jenkins;
 import jenkins.security.QueueItemAuthenticator;
 import jenkins.util.AtmostOneTaskExecutor;
+import jenkins.util.SystemProperties;
 import org.acegisecurity.AccessDeniedException;
 import org.acegisecurity.Authentication;
 import org.jenkinsci.bytecode.AdaptField;
@@ -211,6 +219,33 @@ public class Queue extends ResourceController implements Saveable {
      */
     private final Cache<Long,LeftItem> leftItems = CacheBuilder.newBuilder().expireAfterWrite(5*60, TimeUnit.SECONDS).build();
 
+    /**
+     * {@link BlockedItem}s and {@link BuildableItem}s that entered their current stage since the last
+     * {@link #maintain()} pass, and therefore need to be evaluated even by an incremental pass.
+     *
+     * Guarded by {@link #lock}.
+     */
+    private transient final Set<Item> dirtyItems = new HashSet<Item>();
+
+    /**
+     * Set when something outside the queue (an {@link Executor} finishing, a {@link Computer} coming online, etc.)
+     * may have changed the outcome of evaluating items that did not change themselves,
+     * so the next maintenance pass must re-evaluate everything.
+     */
+    private transient final AtomicBoolean fullMaintenanceRequested = new AtomicBoolean(true);
+
+    /**
+     * When did the last full maintenance pass start?
+     *
+     * Guarded by {@link #lock}.
+     */
+    private transient long lastFullMaintenance;
+
+    private transient final AtomicLong maintenanceCount = new AtomicLong();
+    private transient final AtomicLong fullMaintenanceCount = new AtomicLong();
+    private transient volatile long lastMaintenanceDuration;
+    private transient volatile int lastMaintenanceItemsTouched;
+
     /**
      * Data structure created for each idle {@link Executor}.
      * This is a job offer from the queue to an executor.
@@ -316,7 +351,7 @@ public class Queue extends ResourceController implements Saveable {
     private transient final AtmostOneTaskExecutor<Void> maintainerThread = new AtmostOneTaskExecutor<Void>(new Callable<Void>() {
         @Override
         public Void call() throws Exception {
-            maintain();
+            maintain(true);
             return null;
         }
 
@@ -627,7 +662,7 @@ public class Queue extends ResourceController implements Saveable {
                 // put the item in the queue
                 WaitingItem added = new WaitingItem(due, p, actions);
                 added.enter(this);
-                scheduleMaintenance();   // let an executor know that a new item is in the queue.
+                scheduleIncrementalMaintenance();   // let an executor know that a new item is in the queue.
                 return ScheduleResult.created(added);
             }
 
@@ -656,7 +691,7 @@ public class Queue extends ResourceController implements Saveable {
                 queueUpdated = true;
             }
 
-            if (queueUpdated) scheduleMaintenance();
+            if (queueUpdated) scheduleIncrementalMaintenance();
 
             // REVISIT: when there are multiple existing items in the queue that matches the incoming one,
             // whether the new one should affect all existing ones or not is debatable. I for myself
@@ -767,6 +802,24 @@ public class Queue extends ResourceController implements Saveable {
         return waitingList.iterator().next();
     }
 
+    /**
+     * Identifies the snapshot of the queue currently served by {@link #getItems()} and friends.
+     * The number increases each time the queue contents are republished.
+     * @since TODO
+     */
+    public long getSnapshotVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * When the snapshot identified by {@link #getSnapshotVersion()} was taken.
+     * @return Unix timestamp
+     * @since TODO
+     */
+    public long getSnapshotTimestamp() {
+        return snapshot.timestamp;
+    }
+
     /**
      * Gets a snapshot of items in the queue.
      *
@@ -998,17 +1051,8 @@ public class Queue extends ResourceController implements Saveable {
      * @return Number of {@link BuildableItem}s for the specified label. 
      */
     public @Nonnegative int countBuildableItemsFor(@CheckForNull Label l) {
-        Snapshot snapshot = this.snapshot;
-        int r = 0;
-        for (BuildableItem bi : snapshot.buildables)
-            for (SubTask st : bi.task.getSubTasks())
-                if (null == l || bi.getAssignedLabelFor(st) == l)
-                    r++;
-        for (BuildableItem bi : snapshot.pendings)
-            for (SubTask st : bi.task.getSubTasks())
-                if (null == l || bi.getAssignedLabelFor(st) == l)
-                    r++;
-        return r;
+        BuildableCounts counts = this.snapshot.getBuildableCounts();
+        return l == null ? counts.total : counts.count(l);
     }
     
     /**
@@ -1022,17 +1066,7 @@ public class Queue extends ResourceController implements Saveable {
      * @since 1.615
      */
     public @Nonnegative int strictCountBuildableItemsFor(@CheckForNull Label l) {
-        Snapshot _snapshot = this.snapshot;
-        int r = 0;
-        for (BuildableItem bi : _snapshot.buildables)
-            for (SubTask st : bi.task.getSubTasks())
-                if (bi.getAssignedLabelFor(st) == l)
-                    r++;
-        for (BuildableItem bi : _snapshot.pendings)
-            for (SubTask st : bi.task.getSubTasks())
-                if (bi.getAssignedLabelFor(st) == l)
-                    r++;
-        return r;
+        return this.snapshot.getBuildableCounts().count(l);
     }
 
     /**
@@ -1166,9 +1200,26 @@ public class Queue extends ResourceController implements Saveable {
     @WithBridgeMethods(void.class)
     public Future<?> scheduleMaintenance() {
         // LOGGER.info("Scheduling maintenance");
+        // callers outside the queue do not tell us what changed, so assume anything could have
+        fullMaintenanceRequested.set(true);
+        return maintainerThread.submit();
+    }
+
+    /**
+     * Like {@link #scheduleMaintenance()} but for changes the queue tracks by itself via {@link #dirtyItems},
+     * so an incremental pass is sufficient.
+     */
+    /*package*/ Future<?> scheduleIncrementalMaintenance() {
         return maintainerThread.submit();
     }
 
+    /**
+     * Requests that the next maintenance pass re-evaluates all the items, without triggering one right away.
+     */
+    /*package*/ void requestFullMaintenance() {
+        fullMaintenanceRequested.set(true);
+    }
+
     /**
      * Checks if the given item should be prevented from entering into the {@link #buildables} state
      * and instead stay in the {@link #blockedProjects} state.
@@ -1411,12 +1462,34 @@ public class Queue extends ResourceController implements Saveable {
      * Jenkins internally invokes this method by itself whenever there's a change that can affect
      * the scheduling (such as new node becoming online, # of executors change, a task completes execution, etc.),
      * and it also gets invoked periodically (see {@link Queue.MaintainTask}.)
+     *
+     * <p>
+     * An explicit call to this method always re-evaluates every item in the queue.
      */
     public void maintain() {
+        maintain(false);
+    }
+
+    /**
+     * @param allowIncremental
+     *      if true and {@link #INCREMENTAL_MAINTENANCE} is enabled, only the {@link #dirtyItems} are re-evaluated
+     *      unless a full pass was requested or {@link #FULL_MAINTENANCE_INTERVAL} has elapsed since the last one.
+     */
+    private void maintain(boolean allowIncremental) {
         lock.lock();
         try { try {
+            final long start = System.nanoTime();
+            final long now = System.currentTimeMillis();
+            final boolean fullRequested = fullMaintenanceRequested.getAndSet(false);
+            final boolean full = !allowIncremental || !INCREMENTAL_MAINTENANCE || fullRequested
+                    || now - lastFullMaintenance >= FULL_MAINTENANCE_INTERVAL;
+            if (full) {
+                lastFullMaintenance = now;
+                fullMaintenanceCount.incrementAndGet();
+            }
+            int touched = 0;
 
-            LOGGER.log(Level.FINE, "Queue maintenance started on {0} with {1}", new Object[] {this, snapshot});
+            LOGGER.log(Level.FINE, "Queue maintenance (full={2}) started on {0} with {1}", new Object[] {this, snapshot, full});
 
             // The executors that are currently waiting for a job to run.
             Map<Executor, JobOffer> parked = new HashMap<Executor, JobOffer>();
@@ -1470,6 +1543,11 @@ public class Queue extends ResourceController implements Saveable {
                     Collections.sort(blockedItems, QueueSorter.DEFAULT_BLOCKED_ITEM_COMPARATOR);
                 }
                 for (BlockedItem p : blockedItems) {
+                    if (!full && !dirtyItems.contains(p)) {
+                        // nothing this item depends on has changed since the last pass
+                        continue;
+                    }
+                    touched++;
                     String taskDisplayName = LOGGER.isLoggable(Level.FINEST) ? p.task.getFullDisplayName() : null;
                     LOGGER.log(Level.FINEST, "Current blocked item: {0}", taskDisplayName);
                     if (!isBuildBlocked(p) && allowNewBuildableTask(p.task)) {
@@ -1501,6 +1579,7 @@ public class Queue extends ResourceController implements Saveable {
                 }
 
                 top.leave(this);
+                touched++;
                 Task p = top.task;
                 if (!isBuildBlocked(top) && allowNewBuildableTask(p)) {
                     // ready to be executed immediately
@@ -1525,10 +1604,19 @@ public class Queue extends ResourceController implements Saveable {
             
             // Ensure that identification of blocked tasks is using the live state: JENKINS-27708 & JENKINS-27871
             updateSnapshot();
-            
+
+            // per-computer lookups and predictors are the same for every item considered in this pass
+            MappingWorksheet.ComputerTable computerTable = new MappingWorksheet.ComputerTable();
+            Collection<LoadPredictor> loadPredictors = LoadPredictor.all();
+
             // allocate buildable jobs to executors
             for (BuildableItem p : new ArrayList<BuildableItem>(
                     buildables)) {// copy as we'll mutate the list in the loop
+                if (!full && !dirtyItems.contains(p)) {
+                    // no new executor became available and the item itself did not change, so the outcome would be the same
+                    continue;
+                }
+                touched++;
                 // one last check to make sure this build is not blocked.
                 if (isBuildBlocked(p)) {
                     p.leave(this);
@@ -1567,7 +1655,7 @@ public class Queue extends ResourceController implements Saveable {
                         }
                     }
 
-                    MappingWorksheet ws = new MappingWorksheet(p, candidates);
+                    MappingWorksheet ws = new MappingWorksheet(p, candidates, loadPredictors, computerTable);
                     Mapping m = loadBalancer.map(p.task, ws);
                     if (m == null) {
                         // if we couldn't find the executor that fits,
@@ -1605,11 +1693,50 @@ public class Queue extends ResourceController implements Saveable {
                     updateSnapshot();
                 }
             }
+
+            dirtyItems.clear();
+            maintenanceCount.incrementAndGet();
+            lastMaintenanceItemsTouched = touched;
+            lastMaintenanceDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.log(Level.FINE, "Queue maintenance (full={0}) took {1}ms and evaluated {2} items",
+                    new Object[] {full, lastMaintenanceDuration, touched});
         } finally { updateSnapshot(); } } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Number of {@link #maintain()} passes run so far, full or incremental.
+     * @since TODO
+     */
+    public long getMaintenanceCount() {
+        return maintenanceCount.get();
+    }
+
+    /**
+     * Number of {@link #maintain()} passes run so far that re-evaluated every item in the queue.
+     * @since TODO
+     */
+    public long getFullMaintenanceCount() {
+        return fullMaintenanceCount.get();
+    }
+
+    /**
+     * How long the last {@link #maintain()} pass held the queue lock, in milliseconds.
+     * @since TODO
+     */
+    public long getLastMaintenanceDuration() {
+        return lastMaintenanceDuration;
+    }
+
+    /**
+     * Number of items the last {@link #maintain()} pass evaluated.
+     * @since TODO
+     */
+    public int getLastMaintenanceItemsTouched() {
+        return lastMaintenanceItemsTouched;
+    }
+
     /**
      * Tries to make an item ready to build.
      * @param p a proposed buildable item
@@ -2139,13 +2266,29 @@ public class Queue extends ResourceController implements Saveable {
 
         /**
          * Gets a human-readable status message describing why it's in the queue.
+         *
+         * <p>
+         * For {@link BlockedItem}s and {@link BuildableItem}s the cause is evaluated once per queue snapshot
+         * (see {@link Queue#getSnapshotVersion()}) and shared by all the callers, so it may lag behind
+         * {@link #getCauseOfBlockage()} until the next queue maintenance.
          */
         @Exported
         public final String getWhy() {
-            CauseOfBlockage cob = getCauseOfBlockage();
+            CauseOfBlockage cob = getMemoizedCauseOfBlockage();
             return cob!=null ? cob.getShortDescription() : null;
         }
 
+        private @CheckForNull CauseOfBlockage getMemoizedCauseOfBlockage() {
+            if (this instanceof NotWaitingItem) {
+                Jenkins j = Jenkins.getInstanceOrNull();
+                if (j != null) {
+                    return j.getQueue().snapshot.getCauseOfBlockage(this);
+                }
+            }
+            // waiting items are cheap to evaluate, and their quiet period countdown should stay live
+            return getCauseOfBlockage();
+        }
+
         /**
          * Gets an object that describes why this item is in the queue.
          */
@@ -2466,6 +2609,7 @@ public class Queue extends ResourceController implements Saveable {
         /*package*/ void enter(Queue q) {
             LOGGER.log(Level.FINE, "{0} is blocked", this);
             blockedProjects.add(this);
+            dirtyItems.add(this);
             for (QueueListener ql : QueueListener.all()) {
                 try {
                     ql.onEnterBlocked(this);
@@ -2573,6 +2717,7 @@ public class Queue extends ResourceController implements Saveable {
         @Override
         /*package*/ void enter(Queue q) {
             q.buildables.add(this);
+            q.dirtyItems.add(this);
             for (QueueListener ql : QueueListener.all()) {
                 try {
                     ql.onEnterBuildable(this);
@@ -2763,7 +2908,7 @@ public class Queue extends ResourceController implements Saveable {
         protected void doRun() {
             Queue q = queue.get();
             if (q != null)
-                q.maintain();
+                q.maintain(true);
             else
                 cancel();
         }
@@ -2837,11 +2982,31 @@ public class Queue extends ResourceController implements Saveable {
     }
 
     private static class Snapshot {
+        private static final AtomicLong VERSION = new AtomicLong();
+
+        /**
+         * Stands for a null {@link CauseOfBlockage} in {@link #causesOfBlockage}.
+         */
+        private static final CauseOfBlockage NOT_BLOCKED = CauseOfBlockage.fromMessage(Messages._Queue_Unknown());
+
+        private final long version = VERSION.incrementAndGet();
+        private final long timestamp = System.currentTimeMillis();
         private final Set<WaitingItem> waitingList;
         private final List<BlockedItem> blockedProjects;
         private final List<BuildableItem> buildables;
         private final List<BuildableItem> pendings;
 
+        /**
+         * {@link Item#getCauseOfBlockage()} of the items in this snapshot, computed the first time someone asks,
+         * so that every viewer of the queue shares the same evaluation until the queue changes.
+         */
+        private final ConcurrentMap<Item,CauseOfBlockage> causesOfBlockage = new ConcurrentHashMap<Item,CauseOfBlockage>();
+
+        /**
+         * Per-label index of {@link #buildables} and {@link #pendings}, built the first time someone asks.
+         */
+        private volatile BuildableCounts buildableCounts;
+
         public Snapshot(Set<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
                         List<BuildableItem> pendings) {
             this.waitingList = new LinkedHashSet<WaitingItem>(waitingList);
@@ -2850,12 +3015,65 @@ public class Queue extends ResourceController implements Saveable {
             this.pendings = new ArrayList<BuildableItem>(pendings);
         }
 
+        @CheckForNull CauseOfBlockage getCauseOfBlockage(Item item) {
+            CauseOfBlockage cob = causesOfBlockage.get(item);
+            if (cob == null) {
+                cob = item.getCauseOfBlockage();
+                if (cob == null) {
+                    cob = NOT_BLOCKED;
+                }
+                causesOfBlockage.putIfAbsent(item, cob);
+            }
+            return cob == NOT_BLOCKED ? null : cob;
+        }
+
+        BuildableCounts getBuildableCounts() {
+            BuildableCounts counts = buildableCounts;
+            if (counts == null) {
+                // racing threads would compute the same thing, so no need to lock
+                counts = new BuildableCounts();
+                counts.addAll(buildables);
+                counts.addAll(pendings);
+                buildableCounts = counts;
+            }
+            return counts;
+        }
+
         @Override
         public String toString() {
-            return "Queue.Snapshot{waitingList=" + waitingList + ";blockedProjects=" + blockedProjects + ";buildables=" + buildables + ";pendings=" + pendings + "}";
+            return "Queue.Snapshot{version=" + version + ";waitingList=" + waitingList + ";blockedProjects=" + blockedProjects + ";buildables=" + buildables + ";pendings=" + pendings + "}";
         }
     }
     
+    /**
+     * Number of {@link SubTask}s of buildable and pending items, indexed by their assigned {@link Label},
+     * so that {@link hudson.slaves.NodeProvisioner} and {@link LoadStatistics} can look up each label in constant time
+     * rather than scanning the whole queue once per label.
+     */
+    private static final class BuildableCounts {
+        /**
+         * Keyed by the assigned label, with null standing for the subtasks with no assigned label.
+         */
+        private final Map<Label,Integer> byLabel = new HashMap<Label,Integer>();
+        private int total;
+
+        void addAll(List<BuildableItem> items) {
+            for (BuildableItem bi : items) {
+                for (SubTask st : bi.task.getSubTasks()) {
+                    Label l = bi.getAssignedLabelFor(st);
+                    Integer c = byLabel.get(l);
+                    byLabel.put(l, c == null ? 1 : c + 1);
+                    total++;
+                }
+            }
+        }
+
+        int count(@CheckForNull Label l) {
+            Integer c = byLabel.get(l);
+            return c == null ? 0 : c;
+        }
+    }
+
     private static class LockedRunnable implements Runnable  {
         private final Runnable delegate;
 
@@ -2915,6 +3133,60 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * Makes the next maintenance pass a full one whenever the set of usable executors may have changed.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static class ComputerListenerImpl extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            changed();
+        }
+
+        @Override
+        public void onOffline(@Nonnull Computer c, @CheckForNull OfflineCause cause) {
+            changed();
+        }
+
+        @Override
+        public void onTemporarilyOnline(Computer c) {
+            changed();
+        }
+
+        @Override
+        public void onTemporarilyOffline(Computer c, OfflineCause cause) {
+            changed();
+        }
+
+        @Override
+        public void onConfigurationChange() {
+            changed();
+        }
+
+        private void changed() {
+            Jenkins j = Jenkins.getInstanceOrNull();
+            if (j != null) {
+                j.getQueue().requestFullMaintenance();
+            }
+        }
+    }
+
+    /**
+     * If true, the maintenance passes triggered by the queue itself and by {@link MaintainTask}
+     * only evaluate the items that changed since the previous pass, relying on {@link #scheduleMaintenance()}
+     * and {@link ComputerListener} events to know when everything has to be re-evaluated.
+     */
+    @Restricted(NoExternalUse.class)
+    public static boolean INCREMENTAL_MAINTENANCE = SystemProperties.getBoolean(Queue.class.getName()+".incrementalMaintenance");
+
+    /**
+     * Even in {@link #INCREMENTAL_MAINTENANCE} mode, re-evaluate every item at least this often (in milliseconds),
+     * as a safety net for {@link QueueTaskDispatcher}s and other conditions the queue cannot observe.
+     */
+    @Restricted(NoExternalUse.class)
+    public static long FULL_MAINTENANCE_INTERVAL = SystemProperties.getLong(Queue.class.getName()+".fullMaintenanceInterval", 60000L);
+
     @CLIResolver
     public static Queue getInstance() {
         return Jenkins.getInstance().getQueue();
@@ -37,8 +37,11 @@ import hudson.ExtensionPoint;
 import hudson.FeedAdapter;
 import hudson.Functions;
 import hudson.console.AnnotatedLargeText;
+import hudson.console.AsyncLogOutputStream;
+import hudson.console.BlockCompressedLog;
 import hudson.console.ConsoleLogFilter;
 import hudson.console.ConsoleNote;
+import hudson.console.LogLineIndex;
 import hudson.console.ModelHyperlinkNote;
 import hudson.console.PlainTextConsoleOutputStream;
 import jenkins.util.SystemProperties;
@@ -62,6 +65,9 @@ import hudson.util.LogTaskListener;
 import hudson.util.ProcessTree;
 import hudson.util.XStream2;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -70,12 +76,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -108,6 +116,7 @@ import jenkins.model.RunAction2;
 import jenkins.model.StandardArtifactManager;
 import jenkins.model.lazy.BuildReference;
 import jenkins.model.lazy.LazyBuildMixIn;
+import jenkins.util.InternPool;
 import jenkins.util.VirtualFile;
 import jenkins.util.io.OnMaster;
 import net.sf.json.JSONObject;
@@ -1349,13 +1358,17 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         if (gzF.isFile()) {
             return gzF;
         }
+        File blocksF = BlockCompressedLog.getCompressedFile(rawF);
+        if (blocksF.isFile()) {
+            return blocksF;
+        }
         //If both fail, return the standard, uncompressed log file
         return rawF;
     }
 
     /**
      * Returns an input stream that reads from the log file.
-     * It will use a gzip-compressed log file (log.gz) if that exists.
+     * It will use a gzip-compressed log file (log.gz) or a {@link BlockCompressedLog} if that exists.
      *
      * @throws IOException 
      * @return An input stream from the log file. 
@@ -1366,6 +1379,9 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
     	File logFile = getLogFile();
     	
     	if (logFile.exists() ) {
+    	    if (BlockCompressedLog.isBlockCompressed(logFile)) {
+    	        return BlockCompressedLog.open(logFile, 0);
+    	    }
     	    // Checking if a ".gz" file was return
     	    FileInputStream fis = new FileInputStream(logFile);
     	    if (logFile.getName().endsWith(".gz")) {
@@ -1806,8 +1822,9 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
     private StreamBuildListener createBuildListener(@Nonnull RunExecution job, StreamBuildListener listener, Charset charset) throws IOException, InterruptedException {
         // don't do buffering so that what's written to the listener
         // gets reflected to the file immediately, which can then be
-        // served to the browser immediately
-        OutputStream logger = new FileOutputStream(getLogFile(), true);
+        // served to the browser immediately. AsyncLogOutputStream, if enabled,
+        // only holds on to output as long as the disk is busy.
+        OutputStream logger = AsyncLogOutputStream.wrap(LogLineIndex.wrap(getLogFile(), new FileOutputStream(getLogFile(), true)));
         RunT build = job.getBuild();
 
         // Global log filters
@@ -1914,6 +1931,9 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
     public synchronized void save() throws IOException {
         if(BulkChange.contains(this))   return;
         getDataFile().write(this);
+        if (project instanceof LazyBuildMixIn.LazyLoadingJob) {
+            ((LazyBuildMixIn.LazyLoadingJob<?,?>) project).getLazyBuildMixIn()._getRuns().updateIndex(this);
+        }
         SaveableListener.fireOnChange(this, getDataFile());
     }
 
@@ -1930,7 +1950,13 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
      */
     @Deprecated
     public @Nonnull String getLog() throws IOException {
-        return Util.loadFile(getLogFile(),getCharset());
+        if (!getLogFile().exists()) {
+            return "";
+        }
+        // not Util.loadFile, as the log may be compressed
+        try (Reader r = new InputStreamReader(getLogInputStream(), getCharset())) {
+            return IOUtils.toString(r);
+        }
     }
 
     /**
@@ -1947,12 +1973,23 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
             return Collections.emptyList();
         }
 
+        File logFile = getLogFile();
+        if (logFile.getName().endsWith(".gz") || BlockCompressedLog.isBlockCompressed(logFile)) {
+            return getLogOfCompressed(maxLines);
+        }
+
+        try (LogLineIndex index = LogLineIndex.open(logFile)) {
+            if (index != null) {
+                return getLog(index, maxLines);
+            }
+        }
+
         int lines = 0;
         long filePointer;
         final List<String> lastLines = new ArrayList<>(Math.min(maxLines, 128));
         final List<Byte> bytes = new ArrayList<>();
 
-        try (RandomAccessFile fileHandler = new RandomAccessFile(getLogFile(), "r")) {
+        try (RandomAccessFile fileHandler = new RandomAccessFile(logFile, "r")) {
             long fileLength = fileHandler.length() - 1;
 
             for (filePointer = fileLength; filePointer != -1 && maxLines != lines; filePointer--) {
@@ -1987,6 +2024,66 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         return ConsoleNote.removeNotes(lastLines);
     }
 
+    /**
+     * Same as {@link #getLog(int)} but seeks to the lines directly.
+     */
+    private @Nonnull List<String> getLog(@Nonnull LogLineIndex index, int maxLines) throws IOException {
+        long count = index.getLineCount();
+        if (count <= maxLines) {
+            return ConsoleNote.removeNotes(index.readLines(0, maxLines, getCharset()));
+        }
+        long first = count - maxLines;
+        List<String> lastLines = new ArrayList<>(maxLines);
+        // the first line is replaced by the truncation marker, as above
+        lastLines.add("[...truncated " + Functions.humanReadableByteSize(index.getLineOffset(first) - 2) + "...]");
+        lastLines.addAll(index.readLines(first + 1, maxLines - 1, getCharset()));
+        return ConsoleNote.removeNotes(lastLines);
+    }
+
+    /**
+     * Same as {@link #getLog(int)} for a compressed log, which cannot be read backward,
+     * so we read it forward, keeping the last lines.
+     */
+    private @Nonnull List<String> getLogOfCompressed(int maxLines) throws IOException {
+        ArrayDeque<String> lastLines = new ArrayDeque<>();
+        ArrayDeque<Long> starts = new ArrayDeque<>();
+        boolean truncated = false;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long pos = 0, lineStart = 0;
+        try (InputStream in = new BufferedInputStream(getLogInputStream())) {
+            while (true) {
+                int b = in.read();
+                if (b == -1 && pos == lineStart) {
+                    break;
+                }
+                if (b == '\n' || b == -1) {
+                    lastLines.add(line.toString(getCharset().name()));
+                    starts.add(lineStart);
+                    line.reset();
+                    if (lastLines.size() > maxLines) {
+                        lastLines.removeFirst();
+                        starts.removeFirst();
+                        truncated = true;
+                    }
+                    if (b == -1) {
+                        break;
+                    }
+                    lineStart = pos + 1;
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+                pos++;
+            }
+        }
+
+        List<String> r = new ArrayList<>(lastLines);
+        if (truncated) {
+            // the first line is replaced by the truncation marker, as above
+            r.set(0, "[...truncated " + Functions.humanReadableByteSize(starts.getFirst() - 2) + "...]");
+        }
+        return ConsoleNote.removeNotes(r);
+    }
+
     private String convertBytesToString(List<Byte> bytes) {
         Collections.reverse(bytes);
         Byte[] byteArray = bytes.toArray(new Byte[bytes.size()]);
@@ -2132,6 +2229,63 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
         }
     }
 
+    /**
+     * Sends out a range of lines of the console output, with the annotations removed.
+     *
+     * @param start
+     *      The first line to send, counting from 0. If negative, counts from the end of the log,
+     *      so {@code start=-100} sends the last 100 lines.
+     * @param count
+     *      The maximum number of lines to send. Unlimited if not positive.
+     * @since TODO
+     */
+    public void doConsoleLines(StaplerRequest req, StaplerResponse rsp,
+                               @QueryParameter int start, @QueryParameter int count) throws IOException {
+        int max = count > 0 ? count : Integer.MAX_VALUE;
+        List<String> lines;
+        try (LogLineIndex index = LogLineIndex.open(getLogFile())) {
+            if (index != null) {
+                long from = start >= 0 ? start : Math.max(0, index.getLineCount() + start);
+                lines = index.readLines(from, max, getCharset());
+            } else {
+                lines = readLogLines(start, max);
+            }
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        PrintWriter w = new PrintWriter(new OutputStreamWriter(rsp.getCompressedOutputStream(req), "UTF-8"));
+        for (String line : ConsoleNote.removeNotes(lines)) {
+            w.println(line);
+        }
+        w.close();
+    }
+
+    /**
+     * Fallback for {@link #doConsoleLines} when the log has no {@link LogLineIndex}.
+     */
+    private @Nonnull List<String> readLogLines(int start, int max) throws IOException {
+        ArrayDeque<String> lines = new ArrayDeque<>();
+        try (BufferedReader r = new BufferedReader(getLogReader())) {
+            String line;
+            int n = 0;
+            while ((line = r.readLine()) != null) {
+                if (start < 0) {
+                    // keep a window of the last -start lines
+                    lines.add(line);
+                    if (lines.size() > -start) {
+                        lines.removeFirst();
+                    }
+                } else if (n++ >= start) {
+                    lines.add(line);
+                    if (lines.size() >= max) {
+                        break;
+                    }
+                }
+            }
+        }
+        List<String> r = new ArrayList<>(lines);
+        return r.size() > max ? r.subList(0, max) : r;
+    }
+
     /**
      * Handles incremental log output.
      * @deprecated as of 1.352
@@ -2360,6 +2514,7 @@ public abstract class Run <JobT extends Job<JobT,RunT>,RunT extends Run<JobT,Run
     static {
         XSTREAM.alias("build",FreeStyleBuild.class);
         XSTREAM.registerConverter(Result.conv);
+        XSTREAM.registerConverter(new InternPool.StringConverterImpl());
     }
 
     private static final Logger LOGGER = Logger.getLogger(Run.class.getName());
@@ -35,9 +35,12 @@ import java.util.logging.Level;
 
 import static java.util.logging.Level.*;
 import java.util.logging.Logger;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
 import jenkins.model.RunIdMigrator;
 import jenkins.model.lazy.AbstractLazyLoadRunMap;
 import static jenkins.model.lazy.AbstractLazyLoadRunMap.Direction.*;
+import jenkins.model.lazy.BuildIndex;
 import jenkins.model.lazy.BuildReference;
 import org.apache.commons.collections.comparators.ReverseComparator;
 import org.kohsuke.accmod.Restricted;
@@ -65,6 +68,8 @@ public final class RunMap<R extends Run<?,R>> extends AbstractLazyLoadRunMap<R>
     @Restricted(NoExternalUse.class)
     public RunIdMigrator runIdMigrator = new RunIdMigrator();
 
+    private BuildIndex buildIndex;
+
     // TODO: before first complete build
     // patch up next/previous build link
 
@@ -124,6 +129,7 @@ public final class RunMap<R extends Run<?,R>> extends AbstractLazyLoadRunMap<R>
     public boolean removeValue(R run) {
         run.dropLinks();
         runIdMigrator.delete(dir, run.getId());
+        buildIndex().remove(run.getNumber());
         return super.removeValue(run);
     }
 
@@ -222,6 +228,7 @@ public final class RunMap<R extends Run<?,R>> extends AbstractLazyLoadRunMap<R>
             try {
                 R b = cons.create(d);
                 b.onLoad();
+                updateIndex(b); // heals entries that are missing or stale
                 if (LOGGER.isLoggable(FINEST)) {
                     LOGGER.log(FINEST, "Loaded " + b.getFullDisplayName() + " in " + Thread.currentThread().getName(), new ThisIsHowItsLoaded());
                 }
@@ -237,6 +244,54 @@ public final class RunMap<R extends Run<?,R>> extends AbstractLazyLoadRunMap<R>
         return null;
     }
 
+    /**
+     * Gets the summary of a build without loading it, if the {@link BuildIndex} has an up-to-date entry for it.
+     * Otherwise the build is loaded and the index updated, so the next call is cheap.
+     *
+     * @return null if there is no such build, or it fails to load
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull BuildIndex.Entry getSummary(int n) {
+        if (!baseDirInitialized() || !runExists(n)) {
+            return null;
+        }
+        BuildIndex.Entry e = buildIndex().get(n);
+        if (e != null && e.lastModified == new File(new File(dir, String.valueOf(n)), "build.xml").lastModified()) {
+            return e;
+        }
+        R r = getByNumber(n);
+        return r == null ? null : updateIndex(r);
+    }
+
+    /**
+     * Records the current state of the given build in the {@link BuildIndex}.
+     * Called whenever the build is saved or loaded.
+     *
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull BuildIndex.Entry updateIndex(@Nonnull Run<?,?> r) {
+        if (!baseDirInitialized()) {
+            return null;
+        }
+        Result result = r.getResult();
+        BuildIndex.Entry e = new BuildIndex.Entry(r.getNumber(), r.getId(), result == null ? null : result.toString(),
+                r.getTimeInMillis(), r.getStartTimeInMillis(), r.getDuration(),
+                r.hasCustomDisplayName() ? r.getDisplayName() : null,
+                new File(r.getRootDir(), "build.xml").lastModified());
+        buildIndex().put(e);
+        return e;
+    }
+
+    private synchronized BuildIndex buildIndex() {
+        // the job may have been renamed since the index was opened
+        if (buildIndex == null || !buildIndex.getFile().getParentFile().equals(dir)) {
+            buildIndex = new BuildIndex(dir);
+        }
+        return buildIndex;
+    }
+
     /**
      * Backward compatibility method that notifies {@link RunMap} of who the owner is.
      *
@@ -73,6 +73,11 @@ public class LabelAtom extends Label implements Saveable {
 
     private String description;
 
+    /**
+     * Interned integer for {@link #name}, see {@link LabelAtomSet}. Null until computed.
+     */
+    /*package*/ transient volatile LabelAtomSet.Id id;
+
     public LabelAtom(String name) {
         super(name);
     }
@@ -144,6 +149,11 @@ public class LabelAtom extends Label implements Saveable {
         return resolver.resolve(name);
     }
 
+    @Override
+    public boolean matches(LabelAtomSet atoms) {
+        return atoms.contains(this);
+    }
+
     @Override
     public <V, P> V accept(LabelVisitor<V, P> visitor, P param) {
         return visitor.onAtom(this,param);
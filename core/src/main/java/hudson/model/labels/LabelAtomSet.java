@@ -0,0 +1,179 @@
+package hudson.model.labels;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.util.VariableResolver;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable set of {@link LabelAtom}s represented as a bit set, where each atom name is interned to a small integer.
+ *
+ * <p>
+ * Evaluating a {@link Label} against this set through {@link Label#matches(LabelAtomSet)}
+ * boils down to a few bit tests, instead of resolving every atom of the expression by name.
+ *
+ * @see Node#getLabelAtomSet()
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class LabelAtomSet {
+    /**
+     * Do not bother starting a fresh {@link Ids} below this many names.
+     */
+    private static final int MIN_IDS = 1024;
+
+    /**
+     * Where new sets intern their atom names. Replaced by {@link #trim(int)}.
+     */
+    private static volatile Ids ids = new Ids();
+
+    /**
+     * The id space {@link #bits} refer to.
+     */
+    private final Ids space;
+    private final BitSet bits;
+    private final String labelString;
+
+    private LabelAtomSet(Ids space, BitSet bits, String labelString) {
+        this.space = space;
+        this.bits = bits;
+        this.labelString = labelString;
+    }
+
+    /**
+     * Creates a set of the given atoms.
+     *
+     * @param labelString
+     *      The {@link Node#getLabelString()} the atoms were computed from, if any,
+     *      so that {@link #isUpToDate(String)} can tell when the set needs to be recomputed.
+     */
+    public static LabelAtomSet of(Collection<LabelAtom> atoms, @CheckForNull String labelString) {
+        Ids space = ids;
+        BitSet bits = new BitSet();
+        for (LabelAtom a : atoms) {
+            bits.set(space.idOf(a, true));
+        }
+        return new LabelAtomSet(space, bits, labelString);
+    }
+
+    /**
+     * Returns a set of the atoms of this one plus the given ones.
+     */
+    public LabelAtomSet with(Collection<LabelAtom> atoms) {
+        if (atoms.isEmpty()) {
+            return this;
+        }
+        BitSet bits = (BitSet) this.bits.clone();
+        for (LabelAtom a : atoms) {
+            bits.set(space.idOf(a, true));
+        }
+        return new LabelAtomSet(space, bits, labelString);
+    }
+
+    /**
+     * Checks if this set was computed from the given label string, and still uses the current ids.
+     */
+    public boolean isUpToDate(@CheckForNull String labelString) {
+        return space == ids && (this.labelString == null ? labelString == null : this.labelString.equals(labelString));
+    }
+
+    public boolean contains(LabelAtom atom) {
+        int id = space.idOf(atom, false);
+        return id >= 0 && bits.get(id);
+    }
+
+    /**
+     * Checks if this set contains an atom of the given name.
+     */
+    public boolean contains(String name) {
+        Integer id = space.byName.get(name);
+        return id != null && bits.get(id);
+    }
+
+    /**
+     * Adapts this set to {@link Label#matches(VariableResolver)}, for {@link Label} implementations
+     * that do not know about {@link LabelAtomSet}.
+     */
+    public VariableResolver<Boolean> asResolver() {
+        return new VariableResolver<Boolean>() {
+            public Boolean resolve(String name) {
+                return contains(name);
+            }
+        };
+    }
+
+    public int size() {
+        return bits.cardinality();
+    }
+
+    @Override
+    public String toString() {
+        return bits.toString();
+    }
+
+    /**
+     * Starts interning atom names afresh once many more names were interned than there are labels,
+     * so that the names of labels that came and went, such as those of cloud agents, do not pile up forever.
+     * Existing sets keep working with the ids they were built with; nodes rebuild theirs on the next lookup.
+     *
+     * @param labels
+     *      The number of labels still in use.
+     */
+    public static void trim(int labels) {
+        if (ids.byName.size() > Math.max(2 * labels, MIN_IDS)) {
+            ids = new Ids();
+        }
+    }
+
+    /**
+     * Integers interned for atom names.
+     */
+    /*package*/ static final class Ids {
+        private final ConcurrentMap<String,Integer> byName = new ConcurrentHashMap<String,Integer>();
+        private final AtomicInteger next = new AtomicInteger();
+
+        /**
+         * Returns the integer interned for the name of the given atom, or -1 if there is none and {@code allocate} is false.
+         */
+        int idOf(LabelAtom atom, boolean allocate) {
+            Id cached = atom.id;
+            if (cached != null && cached.space == this) {
+                return cached.value;
+            }
+            Integer id = byName.get(atom.getName());
+            if (id == null) {
+                if (!allocate) {
+                    return -1;
+                }
+                Integer fresh = next.getAndIncrement();
+                id = byName.putIfAbsent(atom.getName(), fresh);
+                if (id == null) {
+                    id = fresh;
+                }
+            }
+            atom.id = new Id(this, id);
+            return id;
+        }
+    }
+
+    /**
+     * An integer interned in some {@link Ids}, as cached by {@link LabelAtom}.
+     */
+    /*package*/ static final class Id {
+        private final Ids space;
+        private final int value;
+
+        Id(Ids space, int value) {
+            this.space = space;
+            this.value = value;
+        }
+    }
+}
@@ -55,6 +55,11 @@ public abstract class LabelExpression extends Label {
             return !base.matches(resolver);
         }
 
+        @Override
+        public boolean matches(LabelAtomSet atoms) {
+            return !base.matches(atoms);
+        }
+
         @Override
         public <V, P> V accept(LabelVisitor<V, P> visitor, P param) {
             return visitor.onNot(this, param);
@@ -82,6 +87,11 @@ public abstract class LabelExpression extends Label {
             return base.matches(resolver);
         }
 
+        @Override
+        public boolean matches(LabelAtomSet atoms) {
+            return base.matches(atoms);
+        }
+
         @Override
         public <V, P> V accept(LabelVisitor<V, P> visitor, P param) {
             return visitor.onParen(this, param);
@@ -124,6 +134,11 @@ public abstract class LabelExpression extends Label {
             return op(lhs.matches(resolver),rhs.matches(resolver));
         }
 
+        @Override
+        public boolean matches(LabelAtomSet atoms) {
+            return op(lhs.matches(atoms),rhs.matches(atoms));
+        }
+
         protected abstract boolean op(boolean a, boolean b);
     }
 
@@ -36,6 +36,7 @@ import hudson.model.Queue.JobOffer;
 import hudson.model.Queue.Task;
 import hudson.model.labels.LabelAssignmentAction;
 import hudson.security.ACL;
+import org.acegisecurity.Authentication;
 
 import java.util.AbstractList;
 import java.util.ArrayList;
@@ -45,6 +46,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import javax.annotation.CheckForNull;
 
 import static java.lang.Math.*;
 
@@ -92,6 +94,11 @@ public class MappingWorksheet {
      */
     public final BuildableItem item;
 
+    /**
+     * {@link BuildableItem#authenticate()} of {@link #item}, computed on demand.
+     */
+    private Authentication authentication;
+
     private static class ReadOnlyList<E> extends AbstractList<E> {
         protected final List<E> base;
 
@@ -114,13 +121,21 @@ public class MappingWorksheet {
         public final Node node;
         public final ACL nodeAcl;
 
-        private ExecutorChunk(List<ExecutorSlot> base, int index) {
+        /**
+         * Whether {@link #item} may run on {@link #node}, computed on demand.
+         */
+        private Boolean permitted;
+
+        private final ComputerTable.Row row;
+
+        private ExecutorChunk(List<ExecutorSlot> base, int index, ComputerTable table) {
             super(base);
             this.index = index;
             assert !base.isEmpty();
             computer = base.get(0).getExecutor().getOwner();
-            node = computer.getNode();
-            nodeAcl = node.getACL();
+            row = table.get(computer);
+            node = row.node;
+            nodeAcl = row.acl;
         }
 
         /**
@@ -130,10 +145,12 @@ public class MappingWorksheet {
             if (this.size()<c.size())
                 return false;   // too small compared towork
 
-            if (c.assignedLabel!=null && !c.assignedLabel.contains(node))
+            if (c.assignedLabel!=null && !row.matches(c.assignedLabel))
                 return false;   // label mismatch
 
-            if (!nodeAcl.hasPermission(item.authenticate(), Computer.BUILD))
+            if (permitted == null)
+                permitted = nodeAcl.hasPermission(getAuthentication(), Computer.BUILD);
+            if (!permitted)
                 return false;   // tasks don't have a permission to run on this node
 
             return true;
@@ -191,6 +208,10 @@ public class MappingWorksheet {
          */
         public final ExecutorChunk lastBuiltOn;
 
+        /**
+         * Result of {@link #applicableExecutorChunks()}, computed on demand.
+         */
+        private List<ExecutorChunk> applicable;
 
         private WorkChunk(List<SubTask> base, int index) {
             super(base);
@@ -217,12 +238,15 @@ public class MappingWorksheet {
         }
 
         public List<ExecutorChunk> applicableExecutorChunks() {
-            List<ExecutorChunk> r = new ArrayList<ExecutorChunk>(executors.size());
-            for (ExecutorChunk e : executors) {
-                if (e.canAccept(this))
-                    r.add(e);
+            if (applicable == null) {
+                List<ExecutorChunk> r = new ArrayList<ExecutorChunk>(executors.size());
+                for (ExecutorChunk e : executors) {
+                    if (e.canAccept(this))
+                        r.add(e);
+                }
+                applicable = r;
             }
-            return r;
+            return new ArrayList<ExecutorChunk>(applicable);
         }
     }
 
@@ -318,7 +342,20 @@ public class MappingWorksheet {
     }
 
     public MappingWorksheet(BuildableItem item, List<? extends ExecutorSlot> offers, Collection<? extends LoadPredictor> loadPredictors) {
+        this(item, offers, loadPredictors, null);
+    }
+
+    /**
+     * @param table
+     *      Lookups of per-computer data shared with other worksheets built at the same time
+     *      (typically during one {@link hudson.model.Queue#maintain()} pass), or null to compute them afresh.
+     * @since TODO
+     */
+    public MappingWorksheet(BuildableItem item, List<? extends ExecutorSlot> offers, Collection<? extends LoadPredictor> loadPredictors,
+                            @CheckForNull ComputerTable table) {
         this.item = item;
+        if (table == null)
+            table = new ComputerTable();
         
         // group executors by their computers
         Map<Computer,List<ExecutorSlot>> j = new HashMap<Computer, List<ExecutorSlot>>();
@@ -365,8 +402,8 @@ public class MappingWorksheet {
         List<ExecutorChunk> executors = new ArrayList<ExecutorChunk>();
         for (List<ExecutorSlot> group : j.values()) {
             if (group.isEmpty())    continue;   // evict empty group
-            ExecutorChunk ec = new ExecutorChunk(group, executors.size());
-            if (ec.node==null)  continue;   // evict out of sync node
+            if (table.get(group.get(0).getExecutor().getOwner()).node==null)  continue;   // evict out of sync node
+            ExecutorChunk ec = new ExecutorChunk(group, executors.size(), table);
             executors.add(ec);
         }
         this.executors = ImmutableList.copyOf(executors);
@@ -395,10 +432,59 @@ public class MappingWorksheet {
         return works.get(index);
     }
 
+    private Authentication getAuthentication() {
+        if (authentication == null)
+            authentication = item.authenticate();
+        return authentication;
+    }
+
     public ExecutorChunk executors(int index) {
         return executors.get(index);
     }
 
+    /**
+     * Remembers the {@link Node} and its {@link ACL} for each {@link Computer} the first time they are looked up,
+     * as well as which {@link Label}s the node matches,
+     * so that building many worksheets against the same set of executors does not repeat that work.
+     *
+     * <p>
+     * The data is not refreshed, so an instance should not outlive the moment it was created for.
+     * It is not thread safe.
+     *
+     * @since TODO
+     */
+    public static final class ComputerTable {
+        private final Map<Computer,Row> rows = new HashMap<Computer,Row>();
+
+        private static final class Row {
+            private final Node node;
+            private final ACL acl;
+            /**
+             * {@link Label#contains(Node)} for the labels asked so far.
+             */
+            private final Map<Label,Boolean> matches = new HashMap<Label,Boolean>();
+
+            Row(Node node) {
+                this.node = node;
+                this.acl = node != null ? node.getACL() : null;
+            }
+
+            boolean matches(Label l) {
+                Boolean b = matches.get(l);
+                if (b == null)
+                    matches.put(l, b = l.contains(node));
+                return b;
+            }
+        }
+
+        private Row get(Computer c) {
+            Row r = rows.get(c);
+            if (r == null)
+                rows.put(c, r = new Row(c.getNode()));
+            return r;
+        }
+    }
+
     public static abstract class ExecutorSlot {
         public abstract Executor getExecutor();
 
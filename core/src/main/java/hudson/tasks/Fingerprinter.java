@@ -42,6 +42,7 @@ import hudson.model.Fingerprint;
 import hudson.model.Fingerprint.BuildPtr;
 import hudson.model.FingerprintMap;
 import hudson.model.Job;
+import jenkins.fingerprints.FingerprintStorage;
 import jenkins.model.Jenkins;
 import hudson.model.Result;
 import hudson.model.Run;
@@ -60,6 +61,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
@@ -240,14 +242,17 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
             }
         });
 
-        for (Record r : records) {
-            Fingerprint fp = r.addRecord(build);
-            if(fp==null) {
-                listener.error(Messages.Fingerprinter_FailedFor(r.relativePath));
-                continue;
+        // let the storage write all the fingerprints of this build in one go
+        try (Closeable batch = FingerprintStorage.get().startBatch()) {
+            for (Record r : records) {
+                Fingerprint fp = r.addRecord(build);
+                if(fp==null) {
+                    listener.error(Messages.Fingerprinter_FailedFor(r.relativePath));
+                    continue;
+                }
+                fp.addFor(build);
+                record.put(r.relativePath,fp.getHashString());
             }
-            fp.addFor(build);
-            record.put(r.relativePath,fp.getHashString());
         }
     }
 
@@ -72,7 +72,7 @@ public abstract class CopyOnWriteMap<K,V> implements Map<K,V> {
     /**
      * Atomically replaces the entire map by the copy of the specified map.
      */
-    public void replaceBy(Map<? extends K, ? extends V> data) {
+    public synchronized void replaceBy(Map<? extends K, ? extends V> data) {
         Map<K, V> d = copy();
         d.clear();
         d.putAll(data);
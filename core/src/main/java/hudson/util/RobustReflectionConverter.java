@@ -51,6 +51,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import static java.util.logging.Level.FINE;
@@ -86,6 +88,11 @@ public class RobustReflectionConverter implements Converter {
     private final ReadWriteLock criticalFieldsLock = new ReentrantReadWriteLock();
     @GuardedBy("criticalFieldsLock")
     private final Map<String, Set<String>> criticalFields = new HashMap<String, Set<String>>();
+    /**
+     * Per class, how {@link #doUnmarshal} reads each child element, by element name.
+     * Flushed by {@link XStream2} when its configuration changes.
+     */
+    private final ConcurrentMap<Class<?>, Map<String, FieldPlan>> plans = new ConcurrentHashMap<Class<?>, Map<String, FieldPlan>>();
 
     public RobustReflectionConverter(Mapper mapper, ReflectionProvider reflectionProvider) {
         this(mapper, reflectionProvider, new XStream2().new PluginClassOwnership());
@@ -108,6 +115,7 @@ public class RobustReflectionConverter implements Converter {
                 criticalFields.put(field, new HashSet<String>());
             }
             criticalFields.get(field).add(clazz.getName());
+            flushCache();
         }
         finally {
             // Unlock
@@ -311,6 +319,16 @@ public class RobustReflectionConverter implements Converter {
 
             boolean critical = false;
             try {
+                if (reader.getAttribute(mapper.aliasForAttribute("defined-in")) == null) {
+                    FieldPlan plan = planFor(result.getClass(), reader.getNodeName());
+                    if (plan.field != null) {
+                        critical = plan.critical;
+                        unmarshalPlannedField(plan, result, reader, context, seenFields);
+                        reader.moveUp();
+                        continue;
+                    }
+                }
+
                 String fieldName = mapper.realMember(result.getClass(), reader.getNodeName());
                 for (Class<?> concrete = result.getClass(); concrete != null; concrete = concrete.getSuperclass()) {
                     // Not quite right since a subclass could shadow a field, but probably suffices:
@@ -374,6 +392,92 @@ public class RobustReflectionConverter implements Converter {
         return result;
     }
 
+    /**
+     * Same as the general case of {@link #doUnmarshal} for an element that maps to a field,
+     * but with everything that only depends on the class and the element name looked up once.
+     */
+    private void unmarshalPlannedField(FieldPlan plan, Object result, HierarchicalStreamReader reader, UnmarshallingContext context, SeenFields seenFields) {
+        Class type = plan.defaultType;
+        String classAttribute = reader.getAttribute(mapper.aliasForAttribute("class"));
+        if (classAttribute != null) {
+            Class specifiedType = mapper.realClass(classAttribute);
+            if (plan.fieldType.isAssignableFrom(specifiedType))
+                type = specifiedType;
+        }
+        Object value = unmarshalField(context, result, type, plan.field);
+        if (!plan.fieldType.isPrimitive()) {
+            type = plan.fieldType;
+        }
+        if (value != null && !type.isAssignableFrom(value.getClass())) {
+            LOGGER.warning("Cannot convert type " + value.getClass().getName() + " to type " + type.getName());
+            // behave as if we didn't see this element
+        } else {
+            reflectionProvider.writeField(result, plan.fieldName, value, null);
+            seenFields.add(null, plan.fieldName);
+        }
+    }
+
+    /**
+     * Looks up how to read the given element of the given class, unless already known.
+     */
+    private FieldPlan planFor(Class<?> type, String nodeName) {
+        Map<String, FieldPlan> byName = plans.get(type);
+        if (byName == null) {
+            byName = new ConcurrentHashMap<String, FieldPlan>();
+            Map<String, FieldPlan> existing = plans.putIfAbsent(type, byName);
+            if (existing != null) {
+                byName = existing;
+            }
+        }
+        FieldPlan plan = byName.get(nodeName);
+        if (plan == null) {
+            plan = new FieldPlan(type, nodeName);
+            byName.put(nodeName, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Forgets what {@link #planFor} has looked up, because the mapper or the critical fields changed.
+     */
+    void flushCache() {
+        plans.clear();
+    }
+
+    /**
+     * How an element of a class maps to one of its fields, as {@link #doUnmarshal} would find out
+     * from the {@link Mapper} and the {@link ReflectionProvider} for every element.
+     */
+    private final class FieldPlan {
+        final String fieldName;
+        final boolean critical;
+        /**
+         * The field, or null if the element does not simply map to a field, in which case the general case applies.
+         */
+        final Field field;
+        final Class fieldType;
+        final Class defaultType;
+
+        FieldPlan(Class<?> type, String nodeName) {
+            fieldName = mapper.realMember(type, nodeName);
+            boolean critical = false;
+            for (Class<?> concrete = type; concrete != null; concrete = concrete.getSuperclass()) {
+                if (hasCriticalField(concrete, fieldName)) {
+                    critical = true;
+                    break;
+                }
+            }
+            this.critical = critical;
+            if (mapper.getImplicitCollectionDefForFieldName(type, nodeName) != null) {
+                field = null;
+            } else {
+                field = reflectionProvider.getFieldOrNull(type, fieldName);
+            }
+            fieldType = field != null ? field.getType() : null;
+            defaultType = field != null ? mapper.defaultImplementationOf(fieldType) : null;
+        }
+    }
+
     public static void addErrorInContext(UnmarshallingContext context, Throwable e) {
         LOGGER.log(FINE, "Failed to load", e);
         ArrayList<Throwable> list = (ArrayList<Throwable>)context.get("ReadError");
@@ -24,6 +24,7 @@
 package hudson.util;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import hudson.model.AbstractBuild;
@@ -31,9 +32,12 @@ import hudson.model.Job;
 import hudson.model.Node;
 import hudson.model.Result;
 import hudson.model.Run;
+import hudson.model.RunMap;
 import hudson.model.TopLevelItem;
 import hudson.model.View;
 import hudson.util.Iterators.CountingPredicate;
+import jenkins.model.lazy.BuildIndex;
+import jenkins.model.lazy.LazyBuildMixIn;
 
 import java.util.*;
 
@@ -49,6 +53,16 @@ public class RunList<R extends Run> extends AbstractList<R> {
     private R first;
     private Integer size;
 
+    /**
+     * If this list is the unfiltered union of the builds of some jobs, those builds, so that {@link #size()}
+     * can be computed without loading them.
+     */
+    private MergedRuns<R> merged;
+    /**
+     * Limit applied through {@link #limit(int)} on top of {@link #merged}.
+     */
+    private int mergedLimit = Integer.MAX_VALUE;
+
     public RunList() {
         base = Collections.emptyList();
     }
@@ -62,18 +76,11 @@ public class RunList<R extends Run> extends AbstractList<R> {
         for (TopLevelItem item : view.getItems())
             jobs.addAll(item.getAllJobs());
 
-        List<Iterable<R>> runLists = new ArrayList<Iterable<R>>();
-        for (Job job : jobs) {
-            runLists.add(job.getBuilds());
-        }
-        this.base = combine(runLists);
+        this.base = this.merged = new MergedRuns<R>(jobs);
     }
 
     public RunList(Collection<? extends Job> jobs) {
-        List<Iterable<R>> runLists = new ArrayList<Iterable<R>>();
-        for (Job j : jobs)
-            runLists.add(j.getBuilds());
-        this.base = combine(runLists);
+        this.base = this.merged = new MergedRuns<R>(new ArrayList<Job>(jobs));
     }
 
     /**
@@ -86,22 +93,12 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * @since 2.37
      */
     public static <J extends Job<J,R>, R extends Run<J,R>> RunList<R> fromJobs(Iterable<? extends J> jobs) {
-        List<Iterable<R>> runLists = new ArrayList<>();
+        List<Job> list = new ArrayList<>();
         for (Job j : jobs)
-            runLists.add(j.getBuilds());
-        return new RunList<>(combine(runLists));
-    }
-
-    private static <R extends Run> Iterable<R> combine(Iterable<Iterable<R>> runLists) {
-        return Iterables.mergeSorted(runLists, new Comparator<R>() {
-            public int compare(R o1, R o2) {
-                long lhs = o1.getTimeInMillis();
-                long rhs = o2.getTimeInMillis();
-                if (lhs > rhs) return -1;
-                if (lhs < rhs) return 1;
-                return 0;
-            }
-        });
+            list.add(j);
+        RunList<R> r = new RunList<>(new MergedRuns<R>(list));
+        r.merged = (MergedRuns<R>) r.base;
+        return r;
     }
 
     private RunList(Iterable<R> c) {
@@ -120,6 +117,9 @@ public class RunList<R extends Run> extends AbstractList<R> {
     @Override
     @Deprecated
     public int size() {
+        if (size==null && merged!=null) {
+            size = Math.min(mergedLimit, merged.size());
+        }
         if (size==null) {
             int sz=0;
             for (R r : this) {
@@ -189,6 +189,12 @@ public class RunList<R extends Run> extends AbstractList<R> {
     @Deprecated
     public R getFirstBuild() {
         size();
+        if (first==null) {
+            // size was computed without iterating
+            for (R r : this) {
+                first = r;
+            }
+        }
         return first;
     }
 
@@ -210,6 +216,7 @@ public class RunList<R extends Run> extends AbstractList<R> {
     public RunList<R> filter(Predicate<R> predicate) {
         size = null;
         first = null;
+        merged = null;
         base = Iterables.filter(base,predicate);
         return this;
     }
@@ -222,6 +229,7 @@ public class RunList<R extends Run> extends AbstractList<R> {
     private RunList<R> limit(final CountingPredicate<R> predicate) {
         size = null;
         first = null;
+        merged = null;
         final Iterable<R> nested = base;
         base = new Iterable<R>() {
             public Iterator<R> iterator() {
@@ -244,11 +252,18 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * @since 1.507
      */
     public RunList<R> limit(final int n) {
-        return limit(new CountingPredicate<R>() {
+        MergedRuns<R> m = merged;
+        limit(new CountingPredicate<R>() {
             public boolean apply(int index, R input) {
                 return index<n;
             }
         });
+        if (m != null) {
+            // still the newest builds of the same jobs, just fewer of them
+            merged = m;
+            mergedLimit = Math.min(mergedLimit, n);
+        }
+        return this;
     }
 
     /**
@@ -320,6 +335,15 @@ public class RunList<R extends Run> extends AbstractList<R> {
      * <em>Warning:</em> this method mutates the original list and then returns it.
      */
     public RunList<R> byTimestamp(final long start, final long end) {
+        if (merged != null && base == merged) {
+            // skip newer builds by their indexed time stamps rather than loading and dropping them
+            base = merged.before(end);
+            return limit(new CountingPredicate<R>() {
+                public boolean apply(int index, R r) {
+                    return start<=r.getTimeInMillis();
+                }
+            });
+        }
         return
         limit(new CountingPredicate<R>() {
             public boolean apply(int index, R r) {
@@ -356,4 +380,181 @@ public class RunList<R extends Run> extends AbstractList<R> {
             }
         });
     }
+
+    /**
+     * Newest-first merge of the builds of several jobs.
+     *
+     * <p>
+     * For jobs that load their builds lazily, builds are compared using the time stamps recorded in the
+     * {@link BuildIndex}, so only the builds actually returned get loaded.
+     * Other jobs are iterated as usual, loading one build ahead.
+     */
+    private static final class MergedRuns<R extends Run> implements Iterable<R> {
+        private final Collection<? extends Job> jobs;
+        /**
+         * Builds started at or after this time are skipped.
+         */
+        private final long end;
+
+        MergedRuns(Collection<? extends Job> jobs) {
+            this(jobs, Long.MAX_VALUE);
+        }
+
+        private MergedRuns(Collection<? extends Job> jobs, long end) {
+            this.jobs = jobs;
+            this.end = end;
+        }
+
+        /**
+         * The same builds, minus those started at or after the given time.
+         */
+        MergedRuns<R> before(long end) {
+            return new MergedRuns<R>(jobs, Math.min(this.end, end));
+        }
+
+        public Iterator<R> iterator() {
+            final PriorityQueue<Cursor<R>> heads = new PriorityQueue<Cursor<R>>(Math.max(1, jobs.size()), NEWEST_FIRST);
+            for (Job j : jobs) {
+                Cursor<R> c = j instanceof LazyBuildMixIn.LazyLoadingJob
+                        ? new LazyCursor<R>(runMapOf(j)) : new IteratorCursor<R>(j.getBuilds().iterator());
+                if (c.advanceBefore(end)) {
+                    heads.add(c);
+                }
+            }
+            return new AbstractIterator<R>() {
+                @Override
+                protected R computeNext() {
+                    while (!heads.isEmpty()) {
+                        Cursor<R> c = heads.poll();
+                        R r = c.take();
+                        if (c.advanceBefore(end)) {
+                            heads.add(c);
+                        }
+                        if (r != null) {
+                            return r;
+                        }
+                    }
+                    return endOfData();
+                }
+            };
+        }
+
+        /**
+         * Counts the build records on disk for lazily loaded jobs, so this may be slightly off
+         * if some of them fail to load.
+         */
+        int size() {
+            int n = 0;
+            for (Job j : jobs) {
+                if (j instanceof LazyBuildMixIn.LazyLoadingJob) {
+                    n += runMapOf(j).numbersOnDisk().length;
+                } else {
+                    n += Iterables.size(j.getBuilds());
+                }
+            }
+            return n;
+        }
+
+        private static RunMap<?> runMapOf(Job j) {
+            return ((LazyBuildMixIn.LazyLoadingJob<?,?>) j).getLazyBuildMixIn()._getRuns();
+        }
+
+        @Override
+        public String toString() {
+            return Iterables.toString(this);
+        }
+    }
+
+    private static final Comparator<Cursor<?>> NEWEST_FIRST = new Comparator<Cursor<?>>() {
+        public int compare(Cursor<?> o1, Cursor<?> o2) {
+            long lhs = o1.timestamp;
+            long rhs = o2.timestamp;
+            if (lhs > rhs) return -1;
+            if (lhs < rhs) return 1;
+            return 0;
+        }
+    };
+
+    private static abstract class Cursor<R> {
+        /**
+         * {@link Run#getTimeInMillis()} of the current build.
+         */
+        long timestamp;
+
+        /**
+         * Moves to the next build.
+         * @return false if there are no more builds
+         */
+        abstract boolean advance();
+
+        /**
+         * Moves to the next build started before the given time.
+         * @return false if there are no more such builds
+         */
+        final boolean advanceBefore(long end) {
+            while (advance()) {
+                if (timestamp < end) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the current build, or null if it turns out it cannot be loaded
+         */
+        abstract R take();
+    }
+
+    private static final class LazyCursor<R> extends Cursor<R> {
+        private final RunMap<?> map;
+        private final int[] numbers;
+        private int index;
+        private int current;
+
+        LazyCursor(RunMap<?> map) {
+            this.map = map;
+            this.numbers = map.numbersOnDisk();
+            this.index = numbers.length;
+        }
+
+        boolean advance() {
+            while (--index >= 0) {
+                BuildIndex.Entry e = map.getSummary(numbers[index]);
+                if (e != null) {
+                    current = numbers[index];
+                    timestamp = e.timestamp;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        R take() {
+            return (R) map.getByNumber(current);
+        }
+    }
+
+    private static final class IteratorCursor<R extends Run> extends Cursor<R> {
+        private final Iterator<R> itr;
+        private R current;
+
+        IteratorCursor(Iterator<R> itr) {
+            this.itr = itr;
+        }
+
+        boolean advance() {
+            if (!itr.hasNext()) {
+                return false;
+            }
+            current = itr.next();
+            timestamp = current.getTimeInMillis();
+            return true;
+        }
+
+        R take() {
+            return current;
+        }
+    }
 }
@@ -136,6 +136,44 @@ public class XStream2 extends XStream {
         reflectionConverter.addCriticalField(clazz, field);
     }
 
+    // RobustReflectionConverter caches what the mapper says about each field, so it needs to forget that on changes
+
+    @Override
+    public void aliasField(String alias, Class definedIn, String fieldName) {
+        super.aliasField(alias, definedIn, fieldName);
+        flushCache();
+    }
+
+    @Override
+    public void addImplicitCollection(Class ownerType, String fieldName, String itemFieldName, Class itemType) {
+        super.addImplicitCollection(ownerType, fieldName, itemFieldName, itemType);
+        flushCache();
+    }
+
+    @Override
+    public void addDefaultImplementation(Class defaultImplementation, Class ofType) {
+        super.addDefaultImplementation(defaultImplementation, ofType);
+        flushCache();
+    }
+
+    @Override
+    public void registerLocalConverter(Class definedIn, String fieldName, Converter converter) {
+        super.registerLocalConverter(definedIn, fieldName, converter);
+        flushCache();
+    }
+
+    @Override
+    public void processAnnotations(Class[] types) {
+        super.processAnnotations(types);
+        flushCache();
+    }
+
+    private void flushCache() {
+        if (reflectionConverter != null) { // null while XStream sets itself up
+            reflectionConverter.flushCache();
+        }
+    }
+
     static String trimVersion(String version) {
         // TODO seems like there should be some trick with VersionNumber to do this
         return version.replaceFirst(" .+$", "");
@@ -228,6 +266,7 @@ public class XStream2 extends XStream {
      */
     public void setMapper(Mapper m) {
         mapperInjectionPoint.setDelegate(m);
+        flushCache();
     }
 
     final class MapperInjectionPoint extends MapperDelegate {
@@ -0,0 +1,298 @@
+package jenkins;
+
+import hudson.init.InitMilestone;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.jvnet.hudson.reactor.Milestone;
+import org.jvnet.hudson.reactor.Task;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records when and on which thread each task of an init reactor ran, to find out what the startup spent its time on.
+ *
+ * <p>
+ * Besides the slowest tasks, this computes the critical path: starting from the task that finished last,
+ * the chain of tasks each of which had to wait for the previous one, through the milestones they require.
+ * Shortening anything else does not make the startup any faster.
+ *
+ * <p>
+ * The profile of the latest startup or reload is shown at {@code /startup-profile},
+ * and can be downloaded as a trace for {@code chrome://tracing}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class InitReactorProfile {
+
+    private final long start = System.currentTimeMillis();
+    private volatile long end;
+    private final List<TaskRecord> tasks = new ArrayList<>();
+    private List<TaskRecord> criticalPath = Collections.emptyList();
+
+    /**
+     * Starts recording a reactor, whose profile becomes the one returned by {@link #getLast()}.
+     */
+    public static @Nonnull InitReactorProfile start() {
+        InitReactorProfile p = new InitReactorProfile();
+        last = p;
+        return p;
+    }
+
+    /**
+     * The profile of the latest startup or reload, which may still be running.
+     */
+    public static @CheckForNull InitReactorProfile getLast() {
+        return last;
+    }
+
+    /**
+     * Records a task that has run.
+     *
+     * @param name display name of the task, if any
+     * @param thread name of the thread the task ran on
+     * @param start when the task started, in milliseconds since the epoch
+     */
+    public void record(@Nonnull Task task, @CheckForNull String name, @Nonnull String thread, long start) {
+        TaskRecord r = new TaskRecord(task, name, thread, start - this.start, System.currentTimeMillis() - this.start);
+        synchronized (tasks) {
+            tasks.add(r);
+        }
+    }
+
+    /**
+     * Called once the reactor is done, to compute the critical path.
+     */
+    public void finish() {
+        synchronized (tasks) {
+            if (end != 0) {
+                return;
+            }
+            criticalPath = computeCriticalPath(tasks);
+            for (TaskRecord r : tasks) {
+                // no need to keep the reactor around
+                r.task = null;
+                r.requires = null;
+            }
+        }
+        end = System.currentTimeMillis();
+    }
+
+    public boolean isFinished() {
+        return end != 0;
+    }
+
+    /**
+     * Milliseconds from start to finish, or so far.
+     */
+    public long getDuration() {
+        return (end != 0 ? end : System.currentTimeMillis()) - start;
+    }
+
+    public long getStartTime() {
+        return start;
+    }
+
+    /**
+     * The tasks that have run, in the order they completed.
+     * Tasks without a name, such as those enforcing the order of {@link InitMilestone}s, are left out.
+     */
+    public @Nonnull List<TaskRecord> getTasks() {
+        List<TaskRecord> r = new ArrayList<>();
+        synchronized (tasks) {
+            for (TaskRecord t : tasks) {
+                if (t.name != null) {
+                    r.add(t);
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * The tasks that took the longest, longest first.
+     */
+    public @Nonnull List<TaskRecord> getSlowestTasks(int n) {
+        List<TaskRecord> r = getTasks();
+        Collections.sort(r, new Comparator<TaskRecord>() {
+            @Override
+            public int compare(TaskRecord a, TaskRecord b) {
+                return Long.compare(b.getDuration(), a.getDuration());
+            }
+        });
+        return r.subList(0, Math.min(n, r.size()));
+    }
+
+    /**
+     * The chain of tasks that determined how long the reactor took, in the order they ran.
+     * Empty until {@link #finish()}.
+     */
+    public @Nonnull List<TaskRecord> getCriticalPath() {
+        List<TaskRecord> r = new ArrayList<>();
+        synchronized (tasks) {
+            for (TaskRecord t : criticalPath) {
+                if (t.name != null) {
+                    r.add(t);
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * When each {@link InitMilestone} was attained, in milliseconds since the start, in the order they are attained.
+     */
+    public @Nonnull Map<InitMilestone, Long> getMilestones() {
+        Map<InitMilestone, Long> r = new EnumMap<>(InitMilestone.class);
+        synchronized (tasks) {
+            for (TaskRecord t : tasks) {
+                for (InitMilestone m : t.milestones) {
+                    Long time = r.get(m);
+                    if (time == null || time < t.end) {
+                        r.put(m, t.end);
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Writes the profile in the Trace Event Format understood by {@code chrome://tracing}:
+     * one complete event per task on the thread it ran on, tasks on the critical path being marked as such,
+     * and one instant event per {@link InitMilestone}.
+     */
+    public void writeTraceTo(Writer w) throws IOException {
+        JSONArray events = new JSONArray();
+        Map<String, Integer> threads = new HashMap<>();
+        Set<TaskRecord> critical = Collections.newSetFromMap(new IdentityHashMap<TaskRecord, Boolean>());
+        critical.addAll(getCriticalPath());
+        for (TaskRecord t : getTasks()) {
+            Integer tid = threads.get(t.thread);
+            if (tid == null) {
+                threads.put(t.thread, tid = threads.size() + 1);
+                events.add(new JSONObject()
+                        .element("name", "thread_name").element("ph", "M").element("pid", 1).element("tid", tid)
+                        .element("args", new JSONObject().element("name", t.thread)));
+            }
+            events.add(new JSONObject()
+                    .element("name", t.name).element("cat", critical.contains(t) ? "critical" : "task")
+                    .element("ph", "X").element("pid", 1).element("tid", tid)
+                    .element("ts", t.start * 1000).element("dur", t.getDuration() * 1000));
+        }
+        for (Map.Entry<InitMilestone, Long> m : getMilestones().entrySet()) {
+            events.add(new JSONObject()
+                    .element("name", m.getKey().toString()).element("cat", "milestone")
+                    .element("ph", "i").element("s", "g").element("pid", 1).element("tid", 0)
+                    .element("ts", m.getValue() * 1000));
+        }
+        new JSONObject().element("traceEvents", events).element("displayTimeUnit", "ms").write(w);
+    }
+
+    /**
+     * Walks back from the task that finished last, each time to the task that finished last
+     * among those attaining a milestone the current one requires.
+     */
+    private static List<TaskRecord> computeCriticalPath(List<TaskRecord> tasks) {
+        // milestones are matched by equality, as the reactor does
+        Map<Object, List<TaskRecord>> attainedBy = new HashMap<>();
+        TaskRecord last = null;
+        for (TaskRecord t : tasks) {
+            // a task added through TaskGraphBuilder is also the milestone others require to run after it
+            add(attainedBy, t.task, t);
+            for (Milestone m : t.task.attains()) {
+                add(attainedBy, m, t);
+            }
+            if (last == null || t.end > last.end) {
+                last = t;
+            }
+        }
+
+        List<TaskRecord> path = new ArrayList<>();
+        Set<TaskRecord> seen = Collections.newSetFromMap(new IdentityHashMap<TaskRecord, Boolean>());
+        for (TaskRecord t = last; t != null && seen.add(t); ) {
+            path.add(t);
+            TaskRecord previous = null;
+            for (Milestone m : t.requires) {
+                List<TaskRecord> candidates = attainedBy.get(m);
+                if (candidates != null) {
+                    for (TaskRecord c : candidates) {
+                        if (c != t && (previous == null || c.end > previous.end)) {
+                            previous = c;
+                        }
+                    }
+                }
+            }
+            t = previous;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private static void add(Map<Object, List<TaskRecord>> map, Object key, TaskRecord t) {
+        List<TaskRecord> l = map.get(key);
+        if (l == null) {
+            map.put(key, l = new ArrayList<>());
+        }
+        l.add(t);
+    }
+
+    /**
+     * One task that has run. Times are in milliseconds since the start of the reactor.
+     */
+    public static final class TaskRecord {
+        private final String name;
+        private final String thread;
+        private final long start, end;
+        private final List<InitMilestone> milestones = new ArrayList<>();
+        private Task task;
+        private Collection<? extends Milestone> requires;
+
+        TaskRecord(Task task, String name, String thread, long start, long end) {
+            this.task = task;
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+            this.requires = task.requires();
+            for (Milestone m : task.attains()) {
+                if (m instanceof InitMilestone) {
+                    milestones.add((InitMilestone) m);
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getDuration() {
+            return end - start;
+        }
+    }
+
+    private static volatile InitReactorProfile last;
+}
@@ -62,6 +62,10 @@ public class InitReactorRunner {
         List<ReactorListener> r = (List) Service.loadInstances(Thread.currentThread().getContextClassLoader(), InitReactorListener.class);
         r.add(new ReactorListener() {
             final Level level = Level.parse( Configuration.getStringConfigParameter("initLogLevel", "FINE") );
+            /**
+             * When the previous {@link InitMilestone} was attained, to time each phase of the startup.
+             */
+            long lastMilestone = System.currentTimeMillis();
             public void onTaskStarted(Task t) {
                 LOGGER.log(level, "Started {0}", getDisplayName(t));
             }
@@ -81,6 +85,12 @@ public class InitReactorRunner {
                     lv = Level.INFO; // noteworthy milestones --- at least while we debug problems further
                     onInitMilestoneAttained((InitMilestone) milestone);
                     s = milestone.toString();
+                    synchronized (this) {
+                        long now = System.currentTimeMillis();
+                        if (Jenkins.LOG_STARTUP_PERFORMANCE)
+                            s += String.format(" (took %dms)", now - lastMilestone);
+                        lastMilestone = now;
+                    }
                 }
                 LOGGER.log(lv,s);
             }
@@ -0,0 +1,119 @@
+package jenkins.fingerprints;
+
+import hudson.Extension;
+import hudson.Functions;
+import hudson.Util;
+import hudson.model.Fingerprint;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Traditional {@link FingerprintStorage}, which keeps each fingerprint in its own XML file
+ * under {@code $JENKINS_HOME/fingerprints/xx/yy/}.
+ *
+ * @since TODO
+ */
+@Extension(ordinal = -100) @Symbol("file")
+public class FileFingerprintStorage extends FingerprintStorage {
+
+    @Override
+    public void save(@Nonnull Fingerprint fp) throws IOException {
+        fp.save(getFingerprintFile(Util.fromHexString(fp.getHashString())));
+    }
+
+    @Override
+    public @CheckForNull Fingerprint load(@Nonnull String id) throws IOException {
+        return Fingerprint.load(getFingerprintFile(Util.fromHexString(id)));
+    }
+
+    @Override
+    public void delete(@Nonnull String id) throws IOException {
+        File file = getFingerprintFile(Util.fromHexString(id));
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete " + file);
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return getRootDir().exists();
+    }
+
+    @Override
+    public int cleanup(@Nonnull TaskListener listener) {
+        int numFiles = 0;
+
+        File[] files1 = getRootDir().listFiles(LENGTH2DIR_FILTER);
+        if(files1!=null) {
+            for (File file1 : files1) {
+                File[] files2 = file1.listFiles(LENGTH2DIR_FILTER);
+                for(File file2 : files2) {
+                    File[] files3 = file2.listFiles(FINGERPRINTFILE_FILTER);
+                    for(File file3 : files3) {
+                        String id = file1.getName() + file2.getName() + file3.getName().substring(0, 28);
+                        try {
+                            if (cleanup(id, listener))
+                                numFiles++;
+                        } catch (IOException e) {
+                            Functions.printStackTrace(e, listener.error("Failed to process " + file3));
+                        }
+                    }
+                    deleteIfEmpty(file2);
+                }
+                deleteIfEmpty(file1);
+            }
+        }
+        return numFiles;
+    }
+
+    /**
+     * Deletes a directory if it's empty.
+     */
+    private void deleteIfEmpty(File dir) {
+        String[] r = dir.list();
+        if(r==null)     return; // can happen in a rare occasion
+        if(r.length==0)
+            dir.delete();
+    }
+
+    /**
+     * The directory holding all the XML files.
+     */
+    public static @Nonnull File getRootDir() {
+        return new File(Jenkins.getInstance().getRootDir(), "fingerprints");
+    }
+
+    /**
+     * Determines the file name from md5sum.
+     */
+    @Restricted(NoExternalUse.class)
+    public static @Nonnull File getFingerprintFile(@Nonnull byte[] md5sum) {
+        assert md5sum.length==16;
+        return new File(getRootDir(),
+            Util.toHexString(md5sum,0,1)+'/'+Util.toHexString(md5sum,1,1)+'/'+Util.toHexString(md5sum,2,md5sum.length-2)+".xml");
+    }
+
+    /*package*/ static final FileFilter LENGTH2DIR_FILTER = new FileFilter() {
+        public boolean accept(File f) {
+            return f.isDirectory() && f.getName().length()==2;
+        }
+    };
+
+    /*package*/ static final FileFilter FINGERPRINTFILE_FILTER = new FileFilter() {
+        private final Pattern PATTERN = Pattern.compile("[0-9a-f]{28}\\.xml");
+
+        public boolean accept(File f) {
+            return f.isFile() && PATTERN.matcher(f.getName()).matches();
+        }
+    };
+}
@@ -0,0 +1,118 @@
+package jenkins.fingerprints;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.Fingerprint;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where {@link Fingerprint}s are persisted.
+ *
+ * <p>
+ * The first implementation in the extension list that is {@linkplain #isEnabled() enabled} is used.
+ * By default this is {@link FileFingerprintStorage}, which keeps one XML file per fingerprint.
+ *
+ * <p>
+ * Implementations are only concerned with persistence; caching and identity of {@link Fingerprint} objects
+ * remain the responsibility of {@link hudson.model.FingerprintMap}.
+ *
+ * @since TODO
+ */
+public abstract class FingerprintStorage implements ExtensionPoint {
+
+    /**
+     * Whether this storage should be used.
+     */
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Persists the current state of the given fingerprint, replacing any previous one.
+     */
+    public abstract void save(@Nonnull Fingerprint fp) throws IOException;
+
+    /**
+     * Loads a fingerprint.
+     *
+     * @param id
+     *      {@link Fingerprint#getHashString()}
+     * @return null if there is no such fingerprint, or it could not be read
+     */
+    public abstract @CheckForNull Fingerprint load(@Nonnull String id) throws IOException;
+
+    /**
+     * Deletes a fingerprint, if it exists.
+     */
+    public abstract void delete(@Nonnull String id) throws IOException;
+
+    /**
+     * Returns true if there is some data in the storage.
+     */
+    public abstract boolean isReady();
+
+    /**
+     * Removes the fingerprints that are no longer used by any build, and trims the others.
+     *
+     * @return the number of fingerprints that were deleted or trimmed
+     * @see hudson.model.FingerprintCleanupThread
+     */
+    public abstract int cleanup(@Nonnull TaskListener listener);
+
+    /**
+     * Indicates that a number of fingerprints are about to be saved, for example when a build records
+     * the fingerprints of its artifacts, so that the storage can defer making them durable until the returned
+     * object gets closed.
+     *
+     * <p>
+     * Batches may be nested and used concurrently from different threads.
+     * The default implementation does nothing special.
+     */
+    public @Nonnull Closeable startBatch() {
+        return NO_BATCH;
+    }
+
+    /**
+     * Examines one fingerprint on behalf of {@link #cleanup(TaskListener)}.
+     *
+     * @return true if the fingerprint was deleted or trimmed
+     */
+    protected final boolean cleanup(@Nonnull String id, @Nonnull TaskListener listener) throws IOException {
+        Fingerprint fp = load(id);
+        if (fp == null || !fp.isAlive()) {
+            listener.getLogger().println("deleting obsolete " + id);
+            delete(id);
+            return true;
+        } else {
+            // get the fingerprint in the official map so have the changes visible to Jenkins
+            // otherwise the mutation made in FingerprintMap can override our trimming.
+            listener.getLogger().println("possibly trimming " + id);
+            fp = Jenkins.getInstance()._getFingerprint(id);
+            return fp != null && fp.trim();
+        }
+    }
+
+    /**
+     * Gets the storage currently in use.
+     */
+    public static @Nonnull FingerprintStorage get() {
+        for (FingerprintStorage s : ExtensionList.lookup(FingerprintStorage.class)) {
+            if (s.isEnabled()) {
+                return s;
+            }
+        }
+        return ExtensionList.lookup(FingerprintStorage.class).get(FileFingerprintStorage.class);
+    }
+
+    private static final Closeable NO_BATCH = new Closeable() {
+        @Override
+        public void close() {
+        }
+    };
+}
@@ -0,0 +1,559 @@
+package jenkins.fingerprints;
+
+import hudson.Extension;
+import hudson.Functions;
+import hudson.Util;
+import hudson.model.Fingerprint;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.Symbol;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link FingerprintStorage} that keeps all the fingerprints in a single append-only log,
+ * {@code $JENKINS_HOME/fingerprints.dat}, instead of one XML file each.
+ *
+ * <p>
+ * Every save appends a record made of the payload length, the MD5 checksum, and the fingerprint
+ * in the XML format of {@link Fingerprint#writeXml}, so usages, ranges and facets are all kept.
+ * Deletions append a record with a length of -1. An open-addressing hash table from checksum to
+ * offset of the latest record is rebuilt by scanning the record headers when the log is opened,
+ * and the log is compacted by {@link #cleanup(TaskListener)} once it is mostly made of stale records.
+ *
+ * <p>
+ * Within a {@linkplain #startBatch() batch}, appends are buffered and only written out when the
+ * last batch is closed (or when a buffered record needs to be read back).
+ *
+ * <p>
+ * When the log is first created, existing XML fingerprints are migrated into it and the
+ * {@code fingerprints} directory is renamed to {@code fingerprints.migrated}.
+ *
+ * <p>
+ * Enabled with {@code -Djenkins.fingerprints.LogFingerprintStorage.enabled=true}.
+ *
+ * @since TODO
+ */
+@Extension(ordinal = 100) @Symbol("log")
+public class LogFingerprintStorage extends FingerprintStorage {
+
+    private static final boolean ENABLED = SystemProperties.getBoolean(LogFingerprintStorage.class.getName() + ".enabled");
+
+    private static final int MAGIC = 0x4A465047; // "JFPG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    /**
+     * Length and checksum in front of every record.
+     */
+    private static final int RECORD_HEADER_SIZE = 4 + 16;
+
+    /**
+     * Do not bother compacting logs smaller than this.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    private RandomAccessFile raf;
+    private DataOutputStream out;
+    /**
+     * Length of the log including what is still buffered in {@link #out}.
+     */
+    private long length;
+    /**
+     * Length of the log actually written to the file.
+     */
+    private long flushedLength;
+    private Index index;
+    /**
+     * Number of open batches.
+     */
+    private int batches;
+
+    public LogFingerprintStorage() {
+        this(new File(Jenkins.getInstance().getRootDir(), "fingerprints.dat"));
+    }
+
+    /*package*/ LogFingerprintStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public void save(@Nonnull Fingerprint fp) throws IOException {
+        byte[] payload = serialize(fp);
+        synchronized (this) {
+            open();
+            append(Util.fromHexString(fp.getHashString()), payload);
+            if (batches == 0) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public synchronized @CheckForNull Fingerprint load(@Nonnull String id) throws IOException {
+        open();
+        byte[] md5 = Util.fromHexString(id);
+        int slot = index.find(md5);
+        if (slot < 0) {
+            return null;
+        }
+        byte[] payload = read(index.offsets[slot] + RECORD_HEADER_SIZE, index.lengths[slot]);
+        try {
+            return Fingerprint.readXml(new InputStreamReader(new ByteArrayInputStream(payload), UTF8));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Malformed fingerprint " + id + " in " + file, e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void delete(@Nonnull String id) throws IOException {
+        open();
+        byte[] md5 = Util.fromHexString(id);
+        if (index.find(md5) >= 0) {
+            out.writeInt(-1);
+            out.write(md5);
+            length += RECORD_HEADER_SIZE;
+            index.remove(md5);
+            if (batches == 0) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return file.exists() || getXmlRootDir().exists();
+    }
+
+    @Override
+    public int cleanup(@Nonnull TaskListener listener) {
+        List<String> ids;
+        synchronized (this) {
+            try {
+                open();
+            } catch (IOException e) {
+                Functions.printStackTrace(e, listener.error("Failed to open " + file));
+                return 0;
+            }
+            ids = index.ids();
+        }
+        int n = 0;
+        for (String id : ids) {
+            try {
+                if (cleanup(id, listener)) {
+                    n++;
+                }
+            } catch (IOException e) {
+                Functions.printStackTrace(e, listener.error("Failed to process " + id));
+            }
+        }
+        synchronized (this) {
+            long garbage = length - HEADER_SIZE - index.liveBytes;
+            if (length > MIN_COMPACTION_SIZE && garbage > index.liveBytes) {
+                listener.getLogger().println("Compacting " + file + ", reclaiming " + garbage + " bytes");
+                try {
+                    compact();
+                } catch (IOException e) {
+                    Functions.printStackTrace(e, listener.error("Failed to compact " + file));
+                }
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public @Nonnull Closeable startBatch() {
+        synchronized (this) {
+            batches++;
+        }
+        return new Closeable() {
+            private boolean closed;
+            @Override
+            public void close() throws IOException {
+                synchronized (LogFingerprintStorage.this) {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    if (--batches == 0 && out != null) {
+                        flush();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Closes the log; it is reopened on the next access.
+     */
+    /*package*/ synchronized void close() throws IOException {
+        if (raf != null) {
+            try {
+                out.close();
+            } finally {
+                raf.close();
+                raf = null;
+                out = null;
+                index = null;
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        assert Thread.holdsLock(this);
+        if (raf != null) {
+            return;
+        }
+        boolean migrate = !file.exists() && getXmlRootDir().isDirectory();
+        if (!file.exists()) {
+            try (DataOutputStream header = new DataOutputStream(new FileOutputStream(file))) {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+            }
+        }
+        index = new Index();
+        length = flushedLength = scan(file, index);
+        raf = new RandomAccessFile(file, "rw");
+        if (raf.length() > length) {
+            LOGGER.log(Level.WARNING, "Discarding a partially written record at the end of {0}", file);
+            raf.setLength(length);
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (migrate) {
+            migrate();
+        }
+    }
+
+    /**
+     * Reads the record headers of the log to populate the index.
+     *
+     * @return the length of the log up to its last complete record
+     */
+    private static long scan(File file, Index index) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a fingerprint log");
+            }
+            long size = file.length();
+            long pos = HEADER_SIZE;
+            byte[] md5 = new byte[16];
+            while (true) {
+                int len;
+                try {
+                    len = in.readInt();
+                    in.readFully(md5);
+                } catch (EOFException e) {
+                    return pos;
+                }
+                if (len > 0) {
+                    // skipBytes does not stop at the end of a file, so a torn payload is detected by length
+                    if (pos + RECORD_HEADER_SIZE + len > size) {
+                        return pos;
+                    }
+                    skipFully(in, len);
+                }
+                if (len < 0) {
+                    index.remove(md5);
+                    pos += RECORD_HEADER_SIZE;
+                } else {
+                    index.put(md5, pos, len);
+                    pos += RECORD_HEADER_SIZE + len;
+                }
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int len) throws IOException {
+        while (len > 0) {
+            int n = in.skipBytes(len);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            len -= n;
+        }
+    }
+
+    private void append(byte[] md5, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.write(md5);
+        out.write(payload);
+        index.put(md5, length, payload.length);
+        length += RECORD_HEADER_SIZE + payload.length;
+    }
+
+    private void flush() throws IOException {
+        out.flush();
+        flushedLength = length;
+    }
+
+    private byte[] read(long pos, int len) throws IOException {
+        if (pos + len > flushedLength) {
+            flush();
+        }
+        FileChannel ch = raf.getChannel();
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of " + file);
+            }
+        }
+        return buf.array();
+    }
+
+    private static byte[] serialize(Fingerprint fp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new OutputStreamWriter(baos, UTF8);
+        fp.writeXml(w);
+        w.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Rewrites the log with only the latest record of each fingerprint.
+     */
+    private void compact() throws IOException {
+        flush();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            o.writeInt(MAGIC);
+            o.writeInt(VERSION);
+            byte[] md5 = new byte[16];
+            for (int slot = 0; slot < index.offsets.length; slot++) {
+                if (index.offsets[slot] <= 0) {
+                    continue;
+                }
+                index.keyOf(slot, md5);
+                int len = index.lengths[slot];
+                o.writeInt(len);
+                o.write(md5);
+                o.write(read(index.offsets[slot] + RECORD_HEADER_SIZE, len));
+            }
+        }
+        close();
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open(); // rebuilds the index
+
+    }
+
+    /**
+     * Where {@link FileFingerprintStorage} keeps its files.
+     */
+    private File getXmlRootDir() {
+        return new File(file.getParentFile(), "fingerprints");
+    }
+
+    /**
+     * Copies the XML fingerprints into the log.
+     */
+    private void migrate() throws IOException {
+        File root = getXmlRootDir();
+        LOGGER.log(Level.INFO, "Migrating fingerprints from {0} to {1}", new Object[] {root, file});
+        int n = 0;
+        File[] files1 = root.listFiles(FileFingerprintStorage.LENGTH2DIR_FILTER);
+        if (files1 != null) {
+            for (File file1 : files1) {
+                File[] files2 = file1.listFiles(FileFingerprintStorage.LENGTH2DIR_FILTER);
+                if (files2 == null) {
+                    continue;
+                }
+                for (File file2 : files2) {
+                    File[] files3 = file2.listFiles(FileFingerprintStorage.FINGERPRINTFILE_FILTER);
+                    if (files3 == null) {
+                        continue;
+                    }
+                    for (File file3 : files3) {
+                        try {
+                            Fingerprint fp = Fingerprint.load(file3);
+                            if (fp != null) {
+                                append(Util.fromHexString(fp.getHashString()), serialize(fp));
+                                n++;
+                            }
+                        } catch (IOException e) {
+                            LOGGER.log(Level.WARNING, "Failed to migrate " + file3, e);
+                        }
+                    }
+                }
+            }
+        }
+        flush();
+        File migrated = new File(root.getPath() + ".migrated");
+        if (!root.renameTo(migrated)) {
+            LOGGER.log(Level.WARNING, "Failed to rename {0} to {1}", new Object[] {root, migrated});
+        }
+        LOGGER.log(Level.INFO, "Migrated {0} fingerprints", n);
+    }
+
+    /**
+     * Open-addressing hash table from MD5 checksum to the offset and payload length of its latest record.
+     * Checksums are uniformly distributed, so their low bits are used as the hash directly.
+     */
+    /*package*/ static final class Index {
+        /**
+         * Two longs per slot: the checksum.
+         */
+        long[] keys = new long[2 * 1024];
+        /**
+         * Offset of the record; 0 for an empty slot (the log header is there), -1 for a deleted one.
+         */
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        /**
+         * Number of live entries.
+         */
+        int size;
+        /**
+         * Number of slots that are not empty, including deleted ones.
+         */
+        int used;
+        /**
+         * Sum of the payload lengths of the live entries, including their record headers.
+         */
+        long liveBytes;
+
+        int find(byte[] md5) {
+            long hi = hi(md5), lo = lo(md5);
+            int mask = offsets.length - 1;
+            for (int slot = (int) lo & mask; ; slot = (slot + 1) & mask) {
+                long off = offsets[slot];
+                if (off == 0) {
+                    return -1;
+                }
+                if (off > 0 && keys[2 * slot] == hi && keys[2 * slot + 1] == lo) {
+                    return slot;
+                }
+            }
+        }
+
+        void put(byte[] md5, long offset, int length) {
+            int slot = find(md5);
+            if (slot >= 0) {
+                liveBytes -= RECORD_HEADER_SIZE + lengths[slot];
+            } else {
+                if ((used + 1) * 4 > offsets.length * 3) {
+                    rehash(size * 2 > offsets.length ? offsets.length * 2 : offsets.length);
+                }
+                long lo = lo(md5);
+                int mask = offsets.length - 1;
+                slot = (int) lo & mask;
+                while (offsets[slot] > 0) {
+                    slot = (slot + 1) & mask;
+                }
+                if (offsets[slot] == 0) {
+                    used++;
+                }
+                keys[2 * slot] = hi(md5);
+                keys[2 * slot + 1] = lo;
+                size++;
+            }
+            offsets[slot] = offset;
+            lengths[slot] = length;
+            liveBytes += RECORD_HEADER_SIZE + length;
+        }
+
+        void remove(byte[] md5) {
+            int slot = find(md5);
+            if (slot >= 0) {
+                offsets[slot] = -1;
+                liveBytes -= RECORD_HEADER_SIZE + lengths[slot];
+                size--;
+            }
+        }
+
+        void keyOf(int slot, byte[] md5) {
+            long hi = keys[2 * slot], lo = keys[2 * slot + 1];
+            for (int i = 0; i < 8; i++) {
+                md5[i] = (byte) (hi >>> (56 - 8 * i));
+                md5[8 + i] = (byte) (lo >>> (56 - 8 * i));
+            }
+        }
+
+        List<String> ids() {
+            List<String> r = new ArrayList<String>(size);
+            byte[] md5 = new byte[16];
+            for (int slot = 0; slot < offsets.length; slot++) {
+                if (offsets[slot] > 0) {
+                    keyOf(slot, md5);
+                    r.add(Util.toHexString(md5));
+                }
+            }
+            return r;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys, oldOffsets = offsets;
+            int[] oldLengths = lengths;
+            keys = new long[2 * capacity];
+            offsets = new long[capacity];
+            lengths = new int[capacity];
+            used = size;
+            int mask = capacity - 1;
+            for (int i = 0; i < oldOffsets.length; i++) {
+                if (oldOffsets[i] <= 0) {
+                    continue;
+                }
+                int slot = (int) oldKeys[2 * i + 1] & mask;
+                while (offsets[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[2 * slot] = oldKeys[2 * i];
+                keys[2 * slot + 1] = oldKeys[2 * i + 1];
+                offsets[slot] = oldOffsets[i];
+                lengths[slot] = oldLengths[i];
+            }
+        }
+
+        private static long hi(byte[] md5) {
+            return toLong(md5, 0);
+        }
+
+        private static long lo(byte[] md5) {
+            return toLong(md5, 8);
+        }
+
+        private static long toLong(byte[] b, int off) {
+            long r = 0;
+            for (int i = 0; i < 8; i++) {
+                r = (r << 8) | (b[off + i] & 0xFF);
+            }
+            return r;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(LogFingerprintStorage.class.getName());
+}
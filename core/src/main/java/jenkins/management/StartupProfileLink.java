@@ -0,0 +1,59 @@
+package jenkins.management;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.InitReactorProfile;
+import jenkins.model.Jenkins;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+
+/**
+ * Shows what the latest startup or reload spent its time on, see {@link InitReactorProfile}.
+ *
+ * @since TODO
+ */
+@Extension(ordinal = Integer.MAX_VALUE - 550) @Symbol("startupProfile")
+public class StartupProfileLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.StartupProfileLink_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.StartupProfileLink_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "startup-profile";
+    }
+
+    public @CheckForNull InitReactorProfile getProfile() {
+        return InitReactorProfile.getLast();
+    }
+
+    /**
+     * Downloads the profile as a trace to be loaded in {@code chrome://tracing}.
+     */
+    public void doTrace(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        InitReactorProfile profile = getProfile();
+        if (profile == null) {
+            throw HttpResponses.notFound();
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Content-Disposition", "attachment; filename=startup-trace.json");
+        profile.writeTraceTo(rsp.getWriter());
+    }
+}
@@ -102,6 +102,7 @@ import hudson.model.View;
 import hudson.model.ViewGroupMixIn;
 import hudson.model.WorkspaceCleanupThread;
 import hudson.model.labels.LabelAtom;
+import hudson.model.labels.LabelAtomSet;
 import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.SCMListener;
 import hudson.model.listeners.SaveableListener;
@@ -179,11 +180,13 @@ import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 import jenkins.ExtensionComponentSet;
 import jenkins.ExtensionRefreshException;
+import jenkins.InitReactorProfile;
 import jenkins.InitReactorRunner;
 import jenkins.install.InstallState;
 import jenkins.install.InstallUtil;
 import jenkins.install.SetupWizard;
 import jenkins.model.ProjectNamingStrategy.DefaultProjectNamingStrategy;
+import jenkins.search.ConsoleLogSearch;
 import jenkins.security.ConfidentialKey;
 import jenkins.security.ConfidentialStore;
 import jenkins.security.SecurityListener;
@@ -273,6 +276,8 @@ import java.util.StringTokenizer;
 import java.util.TreeSet;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -283,6 +288,9 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -429,7 +437,19 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
     /**
      * All {@link Item}s keyed by their {@link Item#getName() name}s.
      */
-    /*package*/ transient final Map<String,TopLevelItem> items = new CopyOnWriteMap.Tree<String,TopLevelItem>(CaseInsensitiveComparator.INSTANCE);
+    /*package*/ transient final CopyOnWriteMap.Tree<String,TopLevelItem> items = new CopyOnWriteMap.Tree<String,TopLevelItem>(CaseInsensitiveComparator.INSTANCE);
+
+    /**
+     * Directories of the items not loaded yet, keyed by name, with {@link #LAZY_ITEM_LOADING}.
+     * An item is moved to {@link #items} when it is first looked up, and all of them are when {@link #items} is enumerated.
+     */
+    private transient final ConcurrentMap<String,PendingItem> pendingItems = new ConcurrentSkipListMap<String,PendingItem>(CaseInsensitiveComparator.INSTANCE);
+
+    /**
+     * Held for writing while {@link #pendingItems} and {@link #items} are replaced together,
+     * and for reading while an item is moved from one to the other.
+     */
+    private transient final ReadWriteLock pendingItemsLock = new ReentrantReadWriteLock();
 
     /**
      * The sole instance.
@@ -1044,6 +1064,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      *      If non-null, this can be consulted for ignoring some tasks. Only used during the initialization of Jenkins.
      */
     private void executeReactor(final InitStrategy is, TaskBuilder... builders) throws IOException, InterruptedException, ReactorException {
+        final InitReactorProfile profile = InitReactorProfile.start();
         Reactor reactor = new Reactor(builders) {
             /**
              * Sets the thread name to the task for better diagnostics.
@@ -1059,8 +1080,8 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                 String name = t.getName();
                 if (taskName !=null)
                     t.setName(taskName);
+                long start = System.currentTimeMillis();
                 try {
-                    long start = System.currentTimeMillis();
                     super.runTask(task);
                     if(LOG_STARTUP_PERFORMANCE)
                         LOGGER.info(String.format("Took %dms for %s by %s",
@@ -1074,6 +1095,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                 } finally {
                     t.setName(name);
                     SecurityContextHolder.clearContext();
+                    profile.record(task, taskName, name, start);
                 }
             }
             private boolean containsLinkageError(Throwable x) {
@@ -1085,17 +1107,21 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
             }
         };
 
-        new InitReactorRunner() {
-            @Override
-            protected void onInitMilestoneAttained(InitMilestone milestone) {
-                initLevel = milestone;
-                if (milestone==PLUGINS_PREPARED) {
-                    // set up Guice to enable injection as early as possible
-                    // before this milestone, ExtensionList.ensureLoaded() won't actually try to locate instances
-                    ExtensionList.lookup(ExtensionFinder.class).getComponents();
+        try {
+            new InitReactorRunner() {
+                @Override
+                protected void onInitMilestoneAttained(InitMilestone milestone) {
+                    initLevel = milestone;
+                    if (milestone==PLUGINS_PREPARED) {
+                        // set up Guice to enable injection as early as possible
+                        // before this milestone, ExtensionList.ensureLoaded() won't actually try to locate instances
+                        ExtensionList.lookup(ExtensionFinder.class).getComponents();
+                    }
                 }
-            }
-        }.run(reactor);
+            }.run(reactor);
+        } finally {
+            profile.finish();
+        }
     }
 
 
@@ -1329,6 +1355,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      */
     @Deprecated
     public boolean hasPeople() {
+        loadPendingItems();
         return View.People.isApplicable(items.values());
     }
 
@@ -1693,6 +1720,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      */
     @Exported(name="jobs")
     public List<TopLevelItem> getItems() {
+        loadPendingItems();
         List<TopLevelItem> viewableItems = new ArrayList<TopLevelItem>();
         for (TopLevelItem item : items.values()) {
             if (item.hasPermission(Item.READ))
@@ -1710,6 +1738,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      * @since 1.296
      */
     public Map<String,TopLevelItem> getItemMap() {
+        loadPendingItems();
         return Collections.unmodifiableMap(items);
     }
 
@@ -1771,6 +1800,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      */
     @Deprecated
     public List<Project> getProjects() {
+        loadPendingItems();
         return Util.createSubList(items.values(), Project.class);
     }
 
@@ -1793,6 +1823,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      * Gets the names of all the {@link TopLevelItem}s.
      */
     public Collection<String> getTopLevelItemNames() {
+        loadPendingItems();
         List<String> names = new ArrayList<String>();
         for (TopLevelItem j : items.values())
             names.add(j.getName());
@@ -2128,6 +2159,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
             if(l.isEmpty())
                 itr.remove();
         }
+        LabelAtomSet.trim(labels.size());
     }
 
     /**
@@ -2267,7 +2299,8 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                 .add(new CollectionSearchIndex() {// for views
                     protected View get(String key) { return getView(key); }
                     protected Collection<View> all() { return viewGroupMixIn.getViews(); }
-                });
+                })
+                .add(ConsoleLogSearch.SEARCH_INDEX);
         return builder;
     }
 
@@ -2731,6 +2764,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      */
     @Override public TopLevelItem getItem(String name) throws AccessDeniedException {
         if (name==null)    return null;
+        loadPendingItem(name);
         TopLevelItem item = items.get(name);
         if (item==null)
             return null;
@@ -2882,22 +2916,97 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         return itemGroupMixIn.createProject(type,name,notify);
     }
 
+    /**
+     * Loads the item of the given name if it has not been loaded yet, see {@link #LAZY_ITEM_LOADING}.
+     * If another thread is loading it, waits for it to be done, unless that could deadlock.
+     */
+    private void loadPendingItem(String name) {
+        if (pendingItems.isEmpty())
+            return;
+        PendingItem p = pendingItems.get(name);
+        if (p == null || p.lock.isHeldByCurrentThread())
+            return; // loading this very item enumerates or looks up the items
+        PendingItem outer = PendingItem.LOADING.get();
+        if (outer == null && !Thread.holdsLock(this)) {
+            p.lock.lock();
+        } else if (!p.lock.tryLock()) {
+            // already loading another item, or holding our monitor which the loading thread may need:
+            // waiting for another thread that may be waiting for us would deadlock,
+            // and while loading an item the others may be missing anyway, as they are when loading at startup
+            return;
+        }
+        try {
+            pendingItemsLock.readLock().lock();
+            try {
+                if (pendingItems.get(name) != p)
+                    return; // loaded meanwhile, or replaced by a reload
+                PendingItem.LOADING.set(p);
+                try {
+                    TopLevelItem item = (TopLevelItem) Items.load(this, p.dir);
+                    items.put(item.getName(), item);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to load " + p.dir, e);
+                } finally {
+                    PendingItem.LOADING.set(outer);
+                    // only once published, so that a concurrent lookup either waits for it or finds it in items
+                    pendingItems.remove(name, p);
+                }
+            } finally {
+                pendingItemsLock.readLock().unlock();
+            }
+        } finally {
+            p.lock.unlock();
+        }
+    }
+
+    /**
+     * Loads all the items that have not been loaded yet, see {@link #LAZY_ITEM_LOADING}.
+     * Once this returns, all of them are in {@link #items}, unless this is called while loading one of them.
+     */
+    private void loadPendingItems() {
+        if (pendingItems.isEmpty())
+            return;
+        for (String name : pendingItems.keySet()) {
+            loadPendingItem(name);
+        }
+    }
+
+    /**
+     * An item of {@link #pendingItems}, locked while it is being loaded.
+     */
+    private static final class PendingItem {
+        /**
+         * The item the current thread is loading.
+         */
+        static final ThreadLocal<PendingItem> LOADING = new ThreadLocal<PendingItem>();
+
+        final File dir;
+        final ReentrantLock lock = new ReentrantLock();
+
+        PendingItem(File dir) {
+            this.dir = dir;
+        }
+    }
+
     /**
      * Overwrites the existing item by new one.
      *
      * <p>
      * This is a short cut for deleting an existing job and adding a new one.
      */
-    public synchronized void putItem(TopLevelItem item) throws IOException, InterruptedException {
+    public void putItem(TopLevelItem item) throws IOException, InterruptedException {
         String name = item.getName();
-        TopLevelItem old = items.get(name);
-        if (old ==item)  return; // noop
+        loadPendingItem(name); // before taking our monitor, which the thread loading the item may need
+        synchronized (this) {
+            TopLevelItem old = items.get(name);
+            if (old ==item)  return; // noop
 
-        checkPermission(Item.CREATE);
-        if (old!=null)
-            old.delete();
-        items.put(name,item);
-        ItemListener.fireOnCreated(item);
+            checkPermission(Item.CREATE);
+            if (old!=null)
+                old.delete();
+            items.put(name,item);
+            ItemListener.fireOnCreated(item);
+        }
     }
 
     /**
@@ -2943,7 +3052,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
     }
 
     @Override synchronized public <I extends TopLevelItem> I add(I item, String name) throws IOException, IllegalArgumentException {
-        if (items.containsKey(name)) {
+        if (items.containsKey(name) || pendingItems.containsKey(name)) {
             throw new IllegalArgumentException("already an item '" + name + "'");
         }
         items.put(name, item);
@@ -3034,7 +3143,9 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         }
         File[] subdirs = projectsDir.listFiles();
 
-        final Set<String> loadedNames = Collections.synchronizedSet(new HashSet<String>());
+        // items are published all at once rather than put in one by one, since each put copies the whole map
+        final Map<String,TopLevelItem> loadedItems = new ConcurrentHashMap<String,TopLevelItem>();
+        final Map<String,PendingItem> unloadedItems = new HashMap<String,PendingItem>();
 
         TaskGraphBuilder g = new TaskGraphBuilder();
         Handle loadJenkins = g.requires(EXTENSIONS_AUGMENTED).attains(JOB_LOADED).add("Loading global config", new Executable() {
@@ -3052,38 +3163,67 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
             }
         });
 
+        List<Handle> loadItems = new ArrayList<Handle>();
+        loadItems.add(loadJenkins);
         for (final File subdir : subdirs) {
-            g.requires(loadJenkins).attains(JOB_LOADED).notFatal().add("Loading item " + subdir.getName(), new Executable() {
+            if (LAZY_ITEM_LOADING) {
+                if (Items.getConfigFile(subdir).exists()) {
+                    unloadedItems.put(subdir.getName(), new PendingItem(subdir));
+                }
+                continue;
+            }
+            loadItems.add(g.requires(loadJenkins).attains(JOB_LOADED).notFatal().add("Loading item " + subdir.getName(), new Executable() {
                 public void run(Reactor session) throws Exception {
                     if(!Items.getConfigFile(subdir).exists()) {
                         //Does not have job config file, so it is not a jenkins job hence skip it
                         return;
                     }
                     TopLevelItem item = (TopLevelItem) Items.load(Jenkins.this, subdir);
-                    items.put(item.getName(), item);
-                    loadedNames.add(item.getName());
+                    loadedItems.put(item.getName(), item);
                 }
-            });
+            }));
         }
 
-        g.requires(JOB_LOADED).add("Cleaning up obsolete items deleted from the disk", new Executable() {
+        g.requires(loadItems.toArray(new Handle[loadItems.size()])).attains(JOB_LOADED).add("Publishing loaded items", new Executable() {
             public void run(Reactor reactor) throws Exception {
-                // anything we didn't load from disk, throw them away.
+                // this also throws away anything we didn't load from disk.
                 // doing this after loading from disk allows newly loaded items
                 // to inspect what already existed in memory (in case of reloading)
-
-                // retainAll doesn't work well because of CopyOnWriteMap implementation, so remove one by one
-                // hopefully there shouldn't be too many of them.
-                for (String name : items.keySet()) {
-                    if (!loadedNames.contains(name))
-                        items.remove(name);
+                pendingItemsLock.writeLock().lock();
+                try {
+                    pendingItems.clear();
+                    pendingItems.putAll(unloadedItems);
+                    items.replaceBy(loadedItems);
+                } finally {
+                    pendingItemsLock.writeLock().unlock();
                 }
             }
         });
 
+        if (LAZY_ITEM_LOADING) {
+            // whatever was not looked up by then is loaded in parallel, and the dependency graph built from it,
+            // before startup completes, as triggers and upstream checks rely on the graph
+            List<Milestone> loadPending = new ArrayList<Milestone>();
+            loadPending.add(JOB_LOADED);
+            for (final String name : unloadedItems.keySet()) {
+                loadPending.add(g.requires(JOB_LOADED).attains(COMPLETED).notFatal().add("Loading item " + name, new Executable() {
+                    public void run(Reactor reactor) throws Exception {
+                        loadPendingItem(name);
+                    }
+                }));
+            }
+            g.requires(loadPending.toArray(new Milestone[loadPending.size()])).attains(COMPLETED).add("Building dependency graph", new Executable() {
+                public void run(Reactor reactor) throws Exception {
+                    rebuildDependencyGraph();
+                }
+            });
+        }
+
         g.requires(JOB_LOADED).add("Finalizing set up",new Executable() {
             public void run(Reactor session) throws Exception {
-                rebuildDependencyGraph();
+                if (!LAZY_ITEM_LOADING) {
+                    rebuildDependencyGraph(); // otherwise once all the items are loaded, see above
+                }
 
                 {// recompute label objects - populates the labels mapping.
                     for (Node slave : nodes.getNodes())
@@ -4640,6 +4780,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      * @param currentJobName
      */
     boolean isDisplayNameUnique(String displayName, String currentJobName) {
+        loadPendingItems();
         Collection<TopLevelItem> itemCollection = items.values();
 
         // if there are a lot of projects, we'll have to store their
@@ -5003,6 +5144,16 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
 
     public static boolean PARALLEL_LOAD = Configuration.getBooleanConfigParameter("parallelLoad", true);
     public static boolean KILL_AFTER_LOAD = Configuration.getBooleanConfigParameter("killAfterLoad", false);
+    /**
+     * Skips parsing the {@code config.xml} of top-level items at startup.
+     * Each item is loaded instead when it is first looked up by name or the items are enumerated,
+     * and the remaining ones in parallel once {@link InitMilestone#JOB_LOADED} is reached, before startup completes.
+     * This lets the rest of startup proceed while items load, though the items in folders are loaded with their folder.
+     *
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public static boolean LAZY_ITEM_LOADING = Configuration.getBooleanConfigParameter("lazyItemLoading", false);
     /**
      * @deprecated No longer used.
      */
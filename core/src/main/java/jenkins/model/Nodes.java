@@ -179,6 +179,7 @@ public class Nodes implements Saveable {
                 @Override
                 public Boolean call() throws Exception {
                     if (node == nodes.get(node.getNodeName())) {
+                        node.invalidateLabelAtomSet();
                         jenkins.trimLabels();
                         return true;
                     }
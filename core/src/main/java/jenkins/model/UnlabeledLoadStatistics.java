@@ -81,6 +81,11 @@ public class UnlabeledLoadStatistics extends LoadStatistics {
         return Jenkins.getInstance().getQueue().strictCountBuildableItemsFor(null);
     }
 
+    @Override
+    protected boolean isQueueLengthIndexed() {
+        return true;
+    }
+
     @Override
     protected Iterable<Node> getNodes() {
         return nodes;
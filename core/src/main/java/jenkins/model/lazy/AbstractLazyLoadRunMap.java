@@ -389,6 +389,17 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer,R> i
         return numberOnDisk.max();
     }
 
+    /**
+     * @return the numbers of all the build records on disk, in ascending order,
+     *      without loading them (so some of them may turn out to fail to load)
+     */
+    @Restricted(NoExternalUse.class)
+    public synchronized int[] numbersOnDisk() {
+        int[] r = new int[numberOnDisk.size()];
+        numberOnDisk.copyInto(r);
+        return r;
+    }
+
     protected final synchronized void proposeNewNumber(int number) throws IllegalStateException {
         if (number <= maxNumberOnDisk()) {
             throw new IllegalStateException("JENKINS-27530: cannot create a build with number " + number + " since that (or higher) is already in use among " + numberOnDisk);
@@ -497,7 +508,9 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer,R> i
     private R load(File dataDir, Index editInPlace) {
         assert Thread.holdsLock(this);
         try {
+            long start = System.nanoTime();
             R r = retrieve(dataDir);
+            RunCache.get().recordLoad(System.nanoTime() - start, r != null);
             if (r==null)    return null;
 
             Index copy = editInPlace!=null ? editInPlace : new Index(index);
@@ -0,0 +1,289 @@
+package jenkins.model.lazy;
+
+import hudson.model.Run;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compact summary of the build records of one job, kept in the {@code index} file next to the build directories,
+ * so that basic facts about a build can be looked up without loading (and parsing) its {@code build.xml}.
+ *
+ * <p>
+ * The file is append-only: a new {@link Entry} is written every time a build is saved, and the last entry
+ * for a given build number wins. It is compacted once it holds much more entries than builds.
+ * A missing, truncated or otherwise unreadable file is simply treated as empty (and rewritten),
+ * since the callers can always recover the data from the build records themselves.
+ *
+ * <p>
+ * This class does not know which builds still exist nor whether an entry is up to date
+ * with respect to its build record; that is left to the caller (see {@link Entry#lastModified}).
+ *
+ * <p>
+ * It is read through {@link hudson.model.RunMap#getSummary(int)}, currently by {@link hudson.util.RunList}
+ * to order the builds of several jobs without loading them. The build history widget does not use it:
+ * each of its rows also shows badges, description and progress, which need the {@link Run} anyway.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class BuildIndex {
+    /**
+     * Name of the index file in the builds directory. Not a number, so it is never mistaken for a build.
+     */
+    public static final String FILE_NAME = "index";
+
+    private static final int MAGIC = 0x4A424958; // "JBIX"
+    private static final int VERSION = 1;
+
+    /**
+     * Compact the file once it holds this many times more entries than there are builds.
+     */
+    private static final int COMPACTION_RATIO = 4;
+
+    private final File file;
+
+    /**
+     * Latest entry per build number, or null if the file was not read yet.
+     */
+    private Map<Integer,Entry> entries;
+
+    /**
+     * Number of entries in the file, including the superseded ones.
+     */
+    private int entriesInFile;
+
+    public BuildIndex(@Nonnull File buildsDir) {
+        this.file = new File(buildsDir, FILE_NAME);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the latest entry recorded for the given build number.
+     */
+    public synchronized @CheckForNull Entry get(int number) {
+        return load().get(number);
+    }
+
+    /**
+     * Records a new entry, superseding any previous one for the same build number.
+     */
+    public synchronized void put(@Nonnull Entry e) {
+        Map<Integer,Entry> entries = load();
+        if (e.equals(entries.get(e.number))) {
+            return; // nothing changed, do not grow the file
+        }
+        entries.put(e.number, e);
+        if (entriesInFile >= COMPACTION_RATIO * Math.max(entries.size(), 16)) {
+            compact();
+            return;
+        }
+        try {
+            boolean fresh = !file.exists();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                if (fresh) {
+                    writeHeader(out);
+                    entriesInFile = 0;
+                }
+                e.write(out);
+            }
+            entriesInFile++;
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Failed to update " + file, x);
+        }
+    }
+
+    /**
+     * Forgets the entry of a build that was deleted.
+     */
+    public synchronized void remove(int number) {
+        if (load().remove(number) != null) {
+            // the entry remains in the file until the next compaction, but callers only ask for builds that exist
+            LOGGER.log(Level.FINER, "Dropped #{0} from {1}", new Object[] {number, file});
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest entry of each build.
+     */
+    public synchronized void compact() {
+        Map<Integer,Entry> entries = load();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeHeader(out);
+                for (Entry e : entries.values()) {
+                    e.write(out);
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                // Windows does not replace existing files on rename
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Failed to rename " + tmp + " to " + file);
+                }
+            }
+            entriesInFile = entries.size();
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Failed to compact " + file, x);
+            tmp.delete();
+        }
+    }
+
+    private Map<Integer,Entry> load() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new HashMap<Integer,Entry>();
+        entriesInFile = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized format");
+            }
+            while (true) {
+                Entry e;
+                try {
+                    e = Entry.read(in);
+                } catch (EOFException x) {
+                    break; // end of file, or a partially written trailing entry
+                }
+                entries.put(e.number, e);
+                entriesInFile++;
+            }
+        } catch (FileNotFoundException x) {
+            // not created yet
+        } catch (IOException x) {
+            LOGGER.log(Level.INFO, "Discarding unreadable build index " + file, x);
+            entries.clear();
+            file.delete();
+        }
+        return entries;
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * What the index knows about one build.
+     */
+    public static final class Entry {
+        public final int number;
+        public final @Nonnull String id;
+        /**
+         * {@link hudson.model.Result#toString()}, or null if the build had no result when it was saved.
+         */
+        public final @CheckForNull String result;
+        /**
+         * {@link Run#getTimeInMillis()}.
+         */
+        public final long timestamp;
+        /**
+         * {@link Run#getStartTimeInMillis()}.
+         */
+        public final long startTime;
+        public final long duration;
+        /**
+         * Custom display name, or null if the build uses the default one.
+         */
+        public final @CheckForNull String displayName;
+        /**
+         * Time stamp of the build record this entry was created from,
+         * which the caller can compare with the actual file to detect stale entries.
+         */
+        public final long lastModified;
+
+        public Entry(int number, @Nonnull String id, @CheckForNull String result, long timestamp, long startTime,
+                     long duration, @CheckForNull String displayName, long lastModified) {
+            this.number = number;
+            this.id = id;
+            this.result = result;
+            this.timestamp = timestamp;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.displayName = displayName;
+            this.lastModified = lastModified;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(number);
+            out.writeUTF(id);
+            writeNullable(out, result);
+            out.writeLong(timestamp);
+            out.writeLong(startTime);
+            out.writeLong(duration);
+            writeNullable(out, displayName);
+            out.writeLong(lastModified);
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            int number = in.readInt();
+            String id = in.readUTF();
+            String result = readNullable(in);
+            long timestamp = in.readLong();
+            long startTime = in.readLong();
+            long duration = in.readLong();
+            String displayName = readNullable(in);
+            long lastModified = in.readLong();
+            return new Entry(number, id, result, timestamp, startTime, duration, displayName, lastModified);
+        }
+
+        private static void writeNullable(DataOutputStream out, String s) throws IOException {
+            out.writeBoolean(s != null);
+            if (s != null) {
+                out.writeUTF(s);
+            }
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry that = (Entry) o;
+            return number == that.number && timestamp == that.timestamp && startTime == that.startTime
+                    && duration == that.duration && lastModified == that.lastModified && id.equals(that.id)
+                    && (result == null ? that.result == null : result.equals(that.result))
+                    && (displayName == null ? that.displayName == null : displayName.equals(that.displayName));
+        }
+
+        @Override
+        public int hashCode() {
+            return number;
+        }
+
+        @Override
+        public String toString() {
+            return "BuildIndex.Entry[#" + number + " " + result + "]";
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildIndex.class.getName());
+}
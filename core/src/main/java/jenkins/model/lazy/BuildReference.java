@@ -59,7 +59,11 @@ public final class BuildReference<R> {
      * @see RunMixIn#dropLinks()
      */
     /*package*/ void clear() {
+        Holder<R> h = holder;
         holder = null;
+        if (h != null) {
+            RunCache.get().release(h);
+        }
     }
 
     @Override
@@ -137,6 +141,9 @@ public final class BuildReference<R> {
      * <dd>Use {@link WeakReference}s. Builds will be kept only until the next full garbage collection cycle.
      * <dt><code>strong</code>
      * <dd>Use strong references. Builds will still be loaded lazily, but once loaded, will not be released.
+     * <dt><code>cache</code>
+     * <dd>Use the {@link RunCache}. Builds will be kept up to a configurable count and estimated size,
+     * evicting the least recently used ones first.
      * <dt><code>none</code>
      * <dd>Do not hold onto builds at all. Mainly offered as an option for the purpose of reproducing lazy-loading bugs.
      * </dl>
@@ -147,6 +154,14 @@ public final class BuildReference<R> {
         public static final String MODE_PROPERTY = "jenkins.model.lazy.BuildReference.MODE";
         private static final String mode = SystemProperties.getString(MODE_PROPERTY);
 
+        /**
+         * @return the configured value of {@link #MODE_PROPERTY}
+         * @since TODO
+         */
+        public static String getMode() {
+            return mode == null ? "soft" : mode;
+        }
+
         @Override public <R> Holder<R> make(R referent) {
             if (mode == null || mode.equals("soft")) {
                 return new SoftHolder<R>(referent);
@@ -154,6 +169,8 @@ public final class BuildReference<R> {
                 return new WeakHolder<R>(referent);
             } else if (mode.equals("strong")) {
                 return new StrongHolder<R>(referent);
+            } else if (mode.equals("cache")) {
+                return RunCache.get().make(referent);
             } else if (mode.equals("none")) {
                 return new NoHolder<R>();
             } else {
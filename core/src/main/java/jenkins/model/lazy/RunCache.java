@@ -0,0 +1,212 @@
+package jenkins.model.lazy;
+
+import hudson.model.Run;
+import jenkins.model.Messages;
+import jenkins.model.lazy.BuildReference.Holder;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global cache of loaded builds, bounded by the number of builds and by their estimated size,
+ * with least-recently-used eviction.
+ *
+ * <p>
+ * Used by {@link BuildReference.DefaultHolderFactory} when {@link BuildReference.DefaultHolderFactory#MODE_PROPERTY}
+ * is set to {@code cache}. A build evicted from the cache is only weakly referenced, so it is still returned
+ * if something else happens to keep it in memory, and is put back in the cache in that case.
+ *
+ * <p>
+ * The size of a build in memory is estimated from the size of its {@code build.xml},
+ * multiplied by {@link #SIZE_FACTOR}.
+ *
+ * <p>
+ * Load statistics are recorded by {@link AbstractLazyLoadRunMap} in all modes.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class RunCache {
+    /**
+     * Maximum number of builds kept in memory.
+     */
+    static final int MAX_ENTRIES = SystemProperties.getInteger(RunCache.class.getName() + ".maxEntries", 1000);
+    /**
+     * Maximum estimated size in bytes of the builds kept in memory.
+     */
+    static final long MAX_SIZE = SystemProperties.getLong(RunCache.class.getName() + ".maxSize", 256L * 1024 * 1024);
+    /**
+     * Ratio between the size of a build in memory and the size of its {@code build.xml}.
+     */
+    static final int SIZE_FACTOR = SystemProperties.getInteger(RunCache.class.getName() + ".sizeFactor", 8);
+
+    private static final long MIN_WEIGHT = 1024;
+
+    private static final RunCache INSTANCE = new RunCache(MAX_ENTRIES, MAX_SIZE);
+
+    public static RunCache get() {
+        return INSTANCE;
+    }
+
+    private final int maxEntries;
+    private final long maxSize;
+
+    /**
+     * Strongly held builds, in access order. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<CachedHolder<?>,Object> entries = new LinkedHashMap<CachedHolder<?>,Object>(16, 0.75f, true);
+    /**
+     * Sum of {@link CachedHolder#weight} in {@link #entries}. Guarded by {@code this}.
+     */
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failedLoads = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong();
+
+    /*package*/ RunCache(int maxEntries, long maxSize) {
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Puts a freshly loaded or created build in the cache.
+     */
+    /*package*/ <R> Holder<R> make(@Nonnull R referent) {
+        CachedHolder<R> h = new CachedHolder<R>(this, referent, weigh(referent));
+        retain(h, referent);
+        return h;
+    }
+
+    /**
+     * Drops a build from the cache, for example because it was deleted.
+     */
+    /*package*/ synchronized void release(Holder<?> h) {
+        if (h instanceof CachedHolder && entries.remove(h) != null) {
+            size -= ((CachedHolder) h).weight;
+        }
+    }
+
+    /*package*/ void recordLoad(long nanos, boolean success) {
+        loads.incrementAndGet();
+        loadTime.addAndGet(nanos);
+        if (!success) {
+            failedLoads.incrementAndGet();
+        }
+    }
+
+    private synchronized void retain(CachedHolder<?> h, Object referent) {
+        if (entries.put(h, referent) == null) {
+            size += h.weight;
+        }
+        Iterator<Map.Entry<CachedHolder<?>,Object>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || size > maxSize) && it.hasNext()) {
+            CachedHolder<?> eldest = it.next().getKey();
+            it.remove();
+            size -= eldest.weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long weigh(Object referent) {
+        if (referent instanceof Run) {
+            long length = new File(((Run) referent).getRootDir(), "build.xml").length();
+            return Math.max(MIN_WEIGHT, length * SIZE_FACTOR);
+        }
+        return MIN_WEIGHT;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Estimated size in bytes of the builds in the cache.
+     */
+    public synchronized long getEstimatedSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getFailedLoadCount() {
+        return failedLoads.get();
+    }
+
+    /**
+     * Total time spent loading builds, in milliseconds.
+     */
+    public long getTotalLoadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(loadTime.get());
+    }
+
+    /**
+     * Statistics for display on the system information page.
+     */
+    public Map<String,String> getStatistics() {
+        Map<String,String> r = new LinkedHashMap<String,String>();
+        r.put(Messages.RunCache_Mode(), BuildReference.DefaultHolderFactory.getMode());
+        r.put(Messages.RunCache_CachedBuilds(), size() + " / " + maxEntries);
+        r.put(Messages.RunCache_EstimatedSize(), getEstimatedSize() + " / " + maxSize);
+        r.put(Messages.RunCache_Hits(), String.valueOf(getHitCount()));
+        r.put(Messages.RunCache_Misses(), String.valueOf(getMissCount()));
+        r.put(Messages.RunCache_Evictions(), String.valueOf(getEvictionCount()));
+        long loads = getLoadCount();
+        r.put(Messages.RunCache_Loads(), String.valueOf(loads));
+        r.put(Messages.RunCache_FailedLoads(), String.valueOf(getFailedLoadCount()));
+        r.put(Messages.RunCache_AverageLoadTime(), loads == 0 ? "-" : String.valueOf(getTotalLoadTime() / loads));
+        return r;
+    }
+
+    /**
+     * Weakly refers to a build, which is kept strongly reachable by {@link RunCache#entries} until it gets evicted.
+     */
+    private static final class CachedHolder<R> extends WeakReference<R> implements Holder<R> {
+        private final RunCache cache;
+        private final long weight;
+
+        CachedHolder(RunCache cache, R referent, long weight) {
+            super(referent);
+            this.cache = cache;
+            this.weight = weight;
+        }
+
+        @Override
+        public R get() {
+            R r = super.get();
+            if (r != null) {
+                cache.hits.incrementAndGet();
+                cache.retain(this, r);
+            } else {
+                cache.misses.incrementAndGet();
+            }
+            return r;
+        }
+    }
+}
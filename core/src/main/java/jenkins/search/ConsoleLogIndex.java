@@ -0,0 +1,689 @@
+package jenkins.search;
+
+import hudson.Extension;
+import hudson.console.ConsoleNote;
+import hudson.init.Initializer;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.PeriodicWork;
+import hudson.model.Run;
+import hudson.model.RunMap;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.util.ByteArrayOutputStream2;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.model.lazy.LazyBuildMixIn;
+import jenkins.util.SystemProperties;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static hudson.init.InitMilestone.JOB_LOADED;
+
+/**
+ * Inverted index from the words in the console output of completed builds to the builds and lines they appear in,
+ * kept in {@code $JENKINS_HOME/console-index}.
+ *
+ * <p>
+ * Words are runs of letters, digits and underscores, lower-cased, with console notes removed. Postings are spread
+ * over {@link #BUCKETS} append-only bucket files by the hash of the word, so a query only reads the buckets of its
+ * words. Each posting is a record of the word, the full name of the job, the build number, and the offsets of
+ * (up to {@link #MAX_OFFSETS}) lines containing the word. {@code builds.log} journals which builds are indexed;
+ * postings of builds that are no longer in it are ignored, and dropped when the buckets get rewritten.
+ *
+ * <p>
+ * Builds get indexed once finalized, and existing builds in the background after startup. Builds leave the index
+ * when they are deleted, for example by a {@link jenkins.model.BuildDiscarder}, when their job is deleted or moved
+ * (in which case it is indexed again under the new name), or when they are older than {@link #RETENTION_DAYS} days.
+ * All writes happen on a single background thread.
+ *
+ * <p>
+ * Enabled by setting {@code jenkins.search.ConsoleLogIndex.enabled}.
+ *
+ * @see ConsoleLogSearch
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ConsoleLogIndex {
+
+    private final File dir;
+    private final File journal;
+
+    /**
+     * Indexed builds, from {@link #key(String, int)} to the time of the build.
+     * Only modified by the {@link #writer} thread.
+     */
+    private final Map<String, Long> builds = new ConcurrentHashMap<>();
+
+    /**
+     * Builds whose postings are still in the buckets although they left the index.
+     * Only modified by the {@link #writer} thread.
+     */
+    private final Set<String> garbage = new HashSet<>();
+
+    private final ExecutorService writer = new ThreadPoolExecutor(
+            0, 1, 5L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "ConsoleLogIndex")));
+
+    /*package*/ ConsoleLogIndex(@Nonnull File dir) throws IOException {
+        this.dir = dir;
+        this.journal = new File(dir, "builds.log");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        if (journal.isFile()) {
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (line.startsWith("+")) {
+                        int space = line.indexOf(' ');
+                        if (space > 0) {
+                            builds.put(line.substring(space + 1), Long.parseLong(line.substring(1, space)));
+                        }
+                    } else if (line.startsWith("-") && builds.remove(line.substring(1)) != null) {
+                        garbage.add(line.substring(1));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupted " + journal, e);
+            }
+        }
+    }
+
+    private static ConsoleLogIndex instance;
+
+    /**
+     * Gets the index of this Jenkins.
+     *
+     * @return null if the index is disabled or cannot be opened
+     */
+    public static synchronized @CheckForNull ConsoleLogIndex get() {
+        if (!ENABLED) {
+            return null;
+        }
+        File dir = new File(Jenkins.getInstance().getRootDir(), "console-index");
+        if (instance == null || !instance.dir.equals(dir)) {
+            try {
+                instance = new ConsoleLogIndex(dir);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to open " + dir, e);
+                return null;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * One build whose console contains all the words of a query.
+     */
+    public static final class Hit {
+        private final String job;
+        private final int number;
+        private final long[] offsets;
+
+        Hit(String job, int number, long[] offsets) {
+            this.job = job;
+            this.number = number;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Full name of the job.
+         */
+        public String getJob() {
+            return job;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * Offsets in the log of (some of) the lines containing the first word of the query.
+         */
+        public long[] getOffsets() {
+            return offsets.clone();
+        }
+    }
+
+    /**
+     * Finds the builds whose console contains all the words of the query, most recent first.
+     * This does not check permissions.
+     */
+    public @Nonnull List<Hit> search(@Nonnull String query, int max) throws IOException {
+        Set<String> words = new LinkedHashSet<>();
+        tokenize(query, words);
+        Map<String, long[]> found = null;
+        for (String word : words) {
+            Map<String, long[]> postings = read(word);
+            if (found == null) {
+                found = postings;
+            } else {
+                found.keySet().retainAll(postings.keySet());
+            }
+            if (found.isEmpty()) {
+                break;
+            }
+        }
+        if (found == null) {
+            return Collections.emptyList();
+        }
+
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(found.entrySet());
+        final Map<String, Long> times = new HashMap<>();
+        for (Map.Entry<String, long[]> e : entries) {
+            Long time = builds.get(e.getKey());
+            times.put(e.getKey(), time == null ? 0 : time);
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                return Long.compare(times.get(b.getKey()), times.get(a.getKey()));
+            }
+        });
+        List<Hit> hits = new ArrayList<>();
+        for (Map.Entry<String, long[]> e : entries.subList(0, Math.min(max, entries.size()))) {
+            int hash = e.getKey().lastIndexOf('#');
+            hits.add(new Hit(e.getKey().substring(0, hash), Integer.parseInt(e.getKey().substring(hash + 1)), e.getValue()));
+        }
+        return hits;
+    }
+
+    /**
+     * Reads the postings of one word, from build key to line offsets.
+     */
+    private Map<String, long[]> read(String word) throws IOException {
+        Map<String, long[]> postings = new HashMap<>();
+        File bucket = bucket(word);
+        if (!bucket.isFile()) {
+            return postings;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bucket)))) {
+            while (true) {
+                String w = in.readUTF();
+                String key = key(in.readUTF(), in.readInt());
+                int n = in.readUnsignedShort();
+                if (w.equals(word) && builds.containsKey(key) && !postings.containsKey(key)) {
+                    long[] offsets = new long[n];
+                    for (int i = 0; i < n; i++) {
+                        offsets[i] = in.readLong();
+                    }
+                    postings.put(key, offsets);
+                } else {
+                    in.readFully(new byte[n * 8]);
+                }
+            }
+        } catch (EOFException e) {
+            // end of the bucket, or a record still being appended
+        }
+        return postings;
+    }
+
+    /**
+     * Schedules indexing of a completed build.
+     */
+    public void add(@Nonnull final Run<?, ?> run) {
+        writer.submit(new Runnable() {
+            public void run() {
+                try {
+                    index(run);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to index " + run, e);
+                }
+            }
+        });
+    }
+
+    private void index(Run<?, ?> run) throws IOException {
+        String job = run.getParent().getFullName();
+        String key = key(job, run.getNumber());
+        if (builds.containsKey(key) || run.isBuilding()) {
+            return;
+        }
+        if (garbage.contains(key)) {
+            // indexed before, for example under a job since deleted or renamed back;
+            // the postings of the old build must be gone before the new ones count
+            compact();
+        }
+
+        // word -> offsets of lines, the first element being the count
+        Map<String, long[]> postings = new HashMap<>();
+        Charset charset = run.getCharset();
+        Set<String> words = new LinkedHashSet<>();
+        ByteArrayOutputStream2 line = new ByteArrayOutputStream2();
+        try (InputStream in = new BufferedInputStream(run.getLogInputStream())) {
+            long pos = 0, start = 0;
+            int b;
+            do {
+                b = in.read();
+                if (b >= 0) {
+                    line.write(b);
+                    pos++;
+                }
+                if ((b == '\n' || b < 0) && line.size() > 0) {
+                    words.clear();
+                    tokenize(ConsoleNote.removeNotes(new String(line.getBuffer(), 0, line.size(), charset)), words);
+                    for (String word : words) {
+                        long[] offsets = postings.get(word);
+                        if (offsets == null) {
+                            if (postings.size() >= MAX_WORDS) {
+                                continue;
+                            }
+                            postings.put(word, offsets = new long[MAX_OFFSETS + 1]);
+                        }
+                        if (offsets[0] < MAX_OFFSETS) {
+                            offsets[(int) ++offsets[0]] = start;
+                        }
+                    }
+                    line.reset();
+                    start = pos;
+                }
+            } while (b >= 0);
+        }
+
+        List<List<String>> buckets = new ArrayList<>(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.add(new ArrayList<String>());
+        }
+        for (String word : postings.keySet()) {
+            buckets.get(bucketOf(word)).add(word);
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            if (buckets.get(i).isEmpty()) {
+                continue;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bucket(i), true)))) {
+                for (String word : buckets.get(i)) {
+                    long[] offsets = postings.get(word);
+                    out.writeUTF(word);
+                    out.writeUTF(job);
+                    out.writeInt(run.getNumber());
+                    out.writeShort((int) offsets[0]);
+                    for (int j = 1; j <= offsets[0]; j++) {
+                        out.writeLong(offsets[j]);
+                    }
+                }
+            }
+        }
+        appendJournal("+" + run.getTimeInMillis() + " " + key);
+        builds.put(key, run.getTimeInMillis());
+    }
+
+    /**
+     * Schedules removal of a build from the index.
+     */
+    public void remove(@Nonnull final String job, final int number) {
+        writer.submit(new Runnable() {
+            public void run() {
+                drop(Collections.singleton(key(job, number)));
+            }
+        });
+    }
+
+    /**
+     * Schedules removal of all the builds of a job, or of all the jobs in a folder, from the index.
+     */
+    public void removeItem(@Nonnull final String fullName) {
+        writer.submit(new Runnable() {
+            public void run() {
+                List<String> keys = new ArrayList<>();
+                for (String key : builds.keySet()) {
+                    if (key.startsWith(fullName + "#") || key.startsWith(fullName + "/")) {
+                        keys.add(key);
+                    }
+                }
+                drop(keys);
+            }
+        });
+    }
+
+    private void drop(Collection<String> keys) {
+        try {
+            for (String key : keys) {
+                if (builds.containsKey(key)) {
+                    appendJournal("-" + key);
+                    builds.remove(key);
+                    garbage.add(key);
+                }
+            }
+            if (garbage.size() >= MIN_GARBAGE && garbage.size() > builds.size() / 4) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update " + journal, e);
+        }
+    }
+
+    /**
+     * Rewrites the buckets and the journal without the builds that left the index.
+     */
+    private void compact() throws IOException {
+        for (int i = 0; i < BUCKETS; i++) {
+            File bucket = bucket(i);
+            if (!bucket.isFile()) {
+                continue;
+            }
+            File tmp = new File(bucket.getPath() + ".tmp");
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bucket)));
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                while (true) {
+                    String word;
+                    try {
+                        word = in.readUTF();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    String job = in.readUTF();
+                    int number = in.readInt();
+                    int n = in.readUnsignedShort();
+                    byte[] offsets = new byte[n * 8];
+                    in.readFully(offsets);
+                    if (builds.containsKey(key(job, number))) {
+                        out.writeUTF(word);
+                        out.writeUTF(job);
+                        out.writeInt(number);
+                        out.writeShort(n);
+                        out.write(offsets);
+                    }
+                }
+            }
+            replace(tmp, bucket);
+        }
+
+        File tmp = new File(journal.getPath() + ".tmp");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp), UTF8)) {
+            for (Map.Entry<String, Long> e : builds.entrySet()) {
+                w.write("+" + e.getValue() + " " + e.getKey() + "\n");
+            }
+        }
+        replace(tmp, journal);
+        garbage.clear();
+    }
+
+    private static void replace(File tmp, File target) throws IOException {
+        if (!tmp.renameTo(target) && !(target.delete() && tmp.renameTo(target))) {
+            throw new IOException("Failed to rename " + tmp + " to " + target);
+        }
+    }
+
+    private void appendJournal(String line) throws IOException {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(journal, true), UTF8)) {
+            w.write(line + "\n");
+        }
+    }
+
+    /**
+     * Schedules indexing of all the completed builds that are not indexed yet, and removal of those past retention.
+     */
+    public void backfill() {
+        writer.submit(new Runnable() {
+            public void run() {
+                SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+                try {
+                    expire();
+                    for (Job<?, ?> job : Jenkins.getInstance().allItems(Job.class)) {
+                        backfill(job);
+                    }
+                } finally {
+                    SecurityContextHolder.setContext(old);
+                }
+            }
+        });
+    }
+
+    /**
+     * Schedules indexing of the completed builds of one job that are not indexed yet.
+     */
+    public void backfill(@Nonnull final Job<?, ?> job) {
+        writer.submit(new Runnable() {
+            public void run() {
+                SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+                try {
+                    long cutoff = cutoff();
+                    if (job instanceof LazyBuildMixIn.LazyLoadingJob) {
+                        // only load the builds that are not indexed yet
+                        RunMap<?> runs = ((LazyBuildMixIn.LazyLoadingJob<?, ?>) job).getLazyBuildMixIn()._getRuns();
+                        String name = job.getFullName();
+                        int[] numbers = runs.numbersOnDisk();
+                        for (int i = numbers.length - 1; i >= 0; i--) {
+                            Long indexed = builds.get(key(name, numbers[i]));
+                            if (indexed != null) {
+                                if (indexed < cutoff) {
+                                    break; // builds are newest first
+                                }
+                                continue;
+                            }
+                            Run<?, ?> run = runs.getByNumber(numbers[i]);
+                            if (run != null && !backfill(run, cutoff)) {
+                                break;
+                            }
+                        }
+                    } else {
+                        for (Run<?, ?> run : job.getBuilds()) {
+                            if (!backfill(run, cutoff)) {
+                                break;
+                            }
+                        }
+                    }
+                } finally {
+                    SecurityContextHolder.setContext(old);
+                }
+            }
+        });
+    }
+
+    /**
+     * Indexes one build of {@link #backfill(Job)}.
+     * @return false if the build, and thus the older ones, are past the retention period
+     */
+    private boolean backfill(Run<?, ?> run, long cutoff) {
+        if (run.getTimeInMillis() < cutoff) {
+            return false;
+        }
+        try {
+            index(run);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to index " + run, e);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until everything scheduled so far has been written.
+    /*package*/ void waitForWrites() throws Exception {
+        writer.submit(new Runnable() {
+            public void run() {
+            }
+        }).get();
+    }
+
+    private void expire() {
+        long cutoff = cutoff();
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String, Long> e : builds.entrySet()) {
+            if (e.getValue() < cutoff) {
+                expired.add(e.getKey());
+            }
+        }
+        drop(expired);
+    }
+
+    private static long cutoff() {
+        return RETENTION_DAYS > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETENTION_DAYS) : Long.MIN_VALUE;
+    }
+
+    private static String key(String job, int number) {
+        return job + "#" + number;
+    }
+
+    private static int bucketOf(String word) {
+        return (word.hashCode() & 0x7fffffff) % BUCKETS;
+    }
+
+    private File bucket(int i) {
+        return new File(dir, String.format("%03d.dat", i));
+    }
+
+    private File bucket(String word) {
+        return bucket(bucketOf(word));
+    }
+
+    /**
+     * Splits text into the words we index.
+     */
+    /*package*/ static void tokenize(String text, Collection<String> words) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= MIN_WORD_LENGTH && i - start <= MAX_WORD_LENGTH) {
+                    words.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    @Extension
+    public static final class Listener extends RunListener<Run> {
+        @Override
+        public void onFinalized(Run r) {
+            ConsoleLogIndex index = get();
+            if (index != null) {
+                index.add(r);
+            }
+        }
+
+        @Override
+        public void onDeleted(Run r) {
+            ConsoleLogIndex index = get();
+            if (index != null) {
+                index.remove(r.getParent().getFullName(), r.getNumber());
+            }
+        }
+    }
+
+    @Extension
+    public static final class JobListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            ConsoleLogIndex index = get();
+            if (index != null) {
+                index.removeItem(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            ConsoleLogIndex index = get();
+            if (index != null && item instanceof Job) {
+                // jobs in a renamed folder get notified one by one
+                index.removeItem(oldFullName);
+                index.backfill((Job<?, ?>) item);
+            }
+        }
+    }
+
+    /**
+     * Drops builds past retention once a day.
+     */
+    @Extension
+    public static final class Retention extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void doRun() {
+            final ConsoleLogIndex index = get();
+            if (index != null && RETENTION_DAYS > 0) {
+                index.writer.submit(new Runnable() {
+                    public void run() {
+                        index.expire();
+                    }
+                });
+            }
+        }
+    }
+
+    @Initializer(after = JOB_LOADED)
+    public static void init() {
+        ConsoleLogIndex index = get();
+        if (index != null) {
+            index.backfill();
+        }
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUCKETS = 256;
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_WORD_LENGTH = 64;
+
+    /**
+     * Number of lines recorded per word and build.
+     */
+    private static final int MAX_OFFSETS = 16;
+
+    /**
+     * Number of distinct words indexed per build, to bound the memory needed to index huge logs.
+     */
+    private static final int MAX_WORDS = SystemProperties.getInteger(ConsoleLogIndex.class.getName() + ".maxWords", 100000);
+
+    /**
+     * Do not bother rewriting the buckets for fewer dropped builds than this.
+     */
+    private static final int MIN_GARBAGE = 100;
+
+    /**
+     * Builds older than this many days are not kept in the index; 0 to keep them as long as they exist.
+     */
+    private static final int RETENTION_DAYS = SystemProperties.getInteger(ConsoleLogIndex.class.getName() + ".retentionDays", 0);
+
+    static /* non-final for the script console */ boolean ENABLED = SystemProperties.getBoolean(ConsoleLogIndex.class.getName() + ".enabled");
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleLogIndex.class.getName());
+}
@@ -0,0 +1,167 @@
+package jenkins.search;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.RootAction;
+import hudson.model.Run;
+import hudson.search.SearchIndex;
+import hudson.search.SearchItem;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.Flavor;
+
+import javax.annotation.Nonnull;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches the console output of builds through the {@link ConsoleLogIndex}.
+ *
+ * <p>
+ * Results are listed at {@code /console-search/?q=...}, and available as JSON at {@code /console-search/json?q=...}.
+ * Queries typed in the search box as {@code log:words} lead to the former.
+ *
+ * @since TODO
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class ConsoleLogSearch implements RootAction {
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Console Search";
+    }
+
+    public String getUrlName() {
+        return "console-search";
+    }
+
+    public boolean isEnabled() {
+        return ConsoleLogIndex.get() != null;
+    }
+
+    /**
+     * Finds the builds visible to the current user whose console contains all the words of the query.
+     */
+    public @Nonnull List<Hit> search(String q) throws IOException {
+        List<Hit> hits = new ArrayList<>();
+        ConsoleLogIndex index = ConsoleLogIndex.get();
+        if (index == null || Util.fixEmptyAndTrim(q) == null) {
+            return hits;
+        }
+        // the limit applies to what the user can see, so filter all the hits first
+        for (ConsoleLogIndex.Hit h : index.search(q, Integer.MAX_VALUE)) {
+            Job<?, ?> job = Jenkins.getInstance().getItemByFullName(h.getJob(), Job.class);
+            Run<?, ?> run = job == null ? null : job.getBuildByNumber(h.getNumber());
+            if (run != null) {
+                hits.add(new Hit(run, h.getOffsets()));
+                if (hits.size() >= MAX_RESULTS) {
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+
+    public void doJson(StaplerRequest req, StaplerResponse rsp, @QueryParameter String q) throws IOException, ServletException {
+        Result r = new Result();
+        r.hits.addAll(search(q));
+        rsp.serveExposedBean(req, r, Flavor.JSON);
+    }
+
+    @ExportedBean
+    public static class Result {
+        @Exported
+        public List<Hit> hits = new ArrayList<>();
+    }
+
+    @ExportedBean(defaultVisibility = 999)
+    public static class Hit {
+        private final Run<?, ?> run;
+        private final long[] offsets;
+
+        Hit(Run<?, ?> run, long[] offsets) {
+            this.run = run;
+            this.offsets = offsets;
+        }
+
+        public Run<?, ?> getRun() {
+            return run;
+        }
+
+        @Exported
+        public String getJob() {
+            return run.getParent().getFullName();
+        }
+
+        @Exported
+        public int getNumber() {
+            return run.getNumber();
+        }
+
+        @Exported
+        public String getUrl() {
+            return run.getUrl();
+        }
+
+        /**
+         * Offsets in the log of (some of) the lines containing the first word of the query.
+         */
+        @Exported
+        public long[] getOffsets() {
+            return offsets.clone();
+        }
+    }
+
+    /**
+     * Lets the search box lead to the results of {@code log:words}.
+     * Added to {@link Jenkins#makeSearchIndex()}.
+     */
+    public static final SearchIndex SEARCH_INDEX = new SearchIndex() {
+        public void find(String token, List<SearchItem> result) {
+            if (token.startsWith(PREFIX) && token.length() > PREFIX.length() && ConsoleLogIndex.get() != null) {
+                result.add(new QueryItem(token));
+            }
+        }
+
+        public void suggest(String token, List<SearchItem> result) {
+            find(token, result);
+        }
+    };
+
+    private static final class QueryItem implements SearchItem {
+        private final String token;
+
+        QueryItem(String token) {
+            this.token = token;
+        }
+
+        public String getSearchName() {
+            return token;
+        }
+
+        public String getSearchUrl() {
+            return "/console-search/?q=" + Util.rawEncode(token.substring(PREFIX.length()).trim());
+        }
+
+        public SearchIndex getSearchIndex() {
+            return SearchIndex.EMPTY;
+        }
+    }
+
+    private static final String PREFIX = "log:";
+
+    private static final int MAX_RESULTS = 100;
+}
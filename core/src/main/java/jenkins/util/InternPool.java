@@ -0,0 +1,163 @@
+package jenkins.util;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.thoughtworks.xstream.converters.SingleValueConverter;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide pool of the strings read from build records, so that the same value loaded from
+ * many {@code build.xml} files is held in memory only once.
+ *
+ * <p>
+ * {@link TreeStringBuilder} shares labels between the {@link TreeString}s of one unmarshalling only;
+ * {@link TreeStringBuilder#dedup()} now also looks them up here. Plain strings of build records,
+ * such as parameter values, causes or node names, go through {@link StringConverterImpl}.
+ * Values are only weakly referenced, so the pool never keeps anything in memory by itself.
+ *
+ * <p>
+ * {@link #report()} estimates what has been saved, for example from the script console.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class InternPool {
+
+    private InternPool() {}
+
+    /**
+     * Returns the pooled instance equal to the given string.
+     * Strings longer than {@link #MAX_LENGTH} are unlikely to repeat and are returned as they are.
+     */
+    public static @CheckForNull String intern(@CheckForNull String s) {
+        if (s == null || s.length() > MAX_LENGTH) {
+            return s;
+        }
+        String r = STRINGS.intern(s);
+        count(r != s, STRING_SIZE + 2L * s.length());
+        return r;
+    }
+
+    /**
+     * Returns the pooled array with the same characters as the given one, which must not be modified afterward.
+     */
+    static char[] intern(char[] chars) {
+        if (chars.length == 0 || chars.length > MAX_LENGTH) {
+            return chars;
+        }
+        expunge();
+        Chars key = new Chars(chars);
+        while (true) {
+            Chars existing = CHARS.putIfAbsent(key, key);
+            if (existing == null) {
+                count(false, 0);
+                return chars;
+            }
+            char[] v = existing.get();
+            if (v != null) {
+                count(v != chars, ARRAY_SIZE + 2L * chars.length);
+                return v;
+            }
+            // collected meanwhile
+            CHARS.remove(existing);
+        }
+    }
+
+    private static void expunge() {
+        Reference<? extends char[]> r;
+        while ((r = QUEUE.poll()) != null) {
+            CHARS.remove(r);
+        }
+    }
+
+    private static void count(boolean hit, long size) {
+        LOOKUPS.incrementAndGet();
+        if (hit) {
+            HITS.incrementAndGet();
+            SAVED.addAndGet(size);
+        }
+    }
+
+    /**
+     * Summarizes how much the pool has saved since startup.
+     */
+    public static String report() {
+        return String.format("%d of %d values loaded were duplicates, about %d KB saved; %d character arrays pooled",
+                HITS.get(), LOOKUPS.get(), SAVED.get() / 1024, CHARS.size());
+    }
+
+    /**
+     * Weak reference to a character array that is equal to another one with the same characters,
+     * for as long as both are still referenced.
+     */
+    private static final class Chars extends WeakReference<char[]> {
+        private final int hash;
+
+        Chars(char[] chars) {
+            super(chars, QUEUE);
+            this.hash = Arrays.hashCode(chars);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Chars) || ((Chars) o).hash != hash) {
+                return false;
+            }
+            char[] a = get(), b = ((Chars) o).get();
+            return a != null && b != null && Arrays.equals(a, b);
+        }
+    }
+
+    /**
+     * Reads strings through the pool. Registered for build records in {@link hudson.model.Run#XSTREAM}.
+     */
+    public static final class StringConverterImpl implements SingleValueConverter {
+        public boolean canConvert(Class type) {
+            return type == String.class;
+        }
+
+        public String toString(Object obj) {
+            return (String) obj;
+        }
+
+        public Object fromString(String str) {
+            return intern(str);
+        }
+    }
+
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final ConcurrentMap<Chars, Chars> CHARS = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<char[]> QUEUE = new ReferenceQueue<>();
+
+    private static final AtomicLong LOOKUPS = new AtomicLong();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong SAVED = new AtomicLong();
+
+    /**
+     * Rough heap footprint of a {@link String} and of an array, besides their characters.
+     */
+    private static final int STRING_SIZE = 24 + 16, ARRAY_SIZE = 16;
+
+    /**
+     * Longest value worth pooling.
+     */
+    private static final int MAX_LENGTH = SystemProperties.getInteger(InternPool.class.getName() + ".maxLength", 1024);
+}
@@ -163,6 +163,7 @@ public final class TreeString implements Serializable {
             label = v;
         }
         else {
+            label = InternPool.intern(label);
             table.put(l, label);
         }
     }
@@ -140,7 +140,8 @@ public class TreeStringBuilder {
 
     /**
      * Further reduces the memory footprint by finding the same labels across
-     * multiple {@link TreeString}s.
+     * multiple {@link TreeString}s, including those of other builders
+     * through {@link InternPool}.
      */
     public void dedup() {
         root.dedup(new HashMap<String, char[]>());
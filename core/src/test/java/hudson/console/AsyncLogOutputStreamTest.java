@@ -0,0 +1,88 @@
+package hudson.console;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import org.junit.Test;
+
+public class AsyncLogOutputStreamTest {
+
+    /**
+     * Sink that is slower than the writer, so the buffer fills up.
+     */
+    private static class SlowStream extends OutputStream {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        volatile int flushedSize;
+        volatile boolean closed;
+
+        @Override public void write(int b) {
+            throw new AssertionError("writes are expected to be batched");
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            synchronized (data) {
+                data.write(b, off, len);
+            }
+        }
+
+        @Override public void flush() {
+            synchronized (data) {
+                flushedSize = data.size();
+            }
+        }
+
+        @Override public void close() {
+            closed = true;
+        }
+    }
+
+    @Test public void orderAndFlush() throws Exception {
+        SlowStream sink = new SlowStream();
+        AsyncLogOutputStream out = new AsyncLogOutputStream(sink, 4096);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Random r = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            byte[] chunk = new byte[r.nextInt(3000)];
+            r.nextBytes(chunk);
+            out.write(chunk, 0, chunk.length);
+            out.write(i);
+            expected.write(chunk);
+            expected.write(i);
+            if (i % 50 == 0) {
+                out.flush();
+                assertEquals(expected.size(), sink.flushedSize);
+            }
+        }
+        out.close();
+        assertTrue(sink.closed);
+        assertArrayEquals(expected.toByteArray(), sink.data.toByteArray());
+    }
+
+    @Test public void failureIsReported() throws Exception {
+        AsyncLogOutputStream out = new AsyncLogOutputStream(new OutputStream() {
+            @Override public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        }, 16);
+        try {
+            for (int i = 0; i < 100; i++) {
+                out.write(new byte[10], 0, 10);
+            }
+            out.flush();
+            fail();
+        } catch (IOException e) {
+            assertEquals("disk full", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package hudson.console;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockCompressedLogTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test public void readFromAnyOffset() throws Exception {
+        Random r = new Random(1);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 300000) {
+            text.append("line ").append(r.nextInt()).append('\n');
+        }
+        byte[] data = text.toString().getBytes("UTF-8");
+        File log = tmp.newFile("log");
+        FileUtils.writeByteArrayToFile(log, data);
+        LogLineIndex.getIndexFile(log).createNewFile();
+
+        BlockCompressedLog.compress(log);
+        assertFalse(log.exists());
+        assertFalse(LogLineIndex.getIndexFile(log).exists());
+        File compressed = BlockCompressedLog.getCompressedFile(log);
+        assertEquals(data.length, BlockCompressedLog.length(compressed));
+
+        for (long start : new long[] {0, 1, 65535, 65536, 65537, 200000, data.length - 1, data.length, data.length + 10}) {
+            try (InputStream in = BlockCompressedLog.open(compressed, start)) {
+                byte[] expected = Arrays.copyOfRange(data, (int) Math.min(start, data.length), data.length);
+                assertArrayEquals("from " + start, expected, IOUtils.toByteArray(in));
+            }
+        }
+    }
+
+    @Test public void empty() throws Exception {
+        File log = tmp.newFile("log");
+        BlockCompressedLog.compress(log);
+        File compressed = BlockCompressedLog.getCompressedFile(log);
+        assertEquals(0, BlockCompressedLog.length(compressed));
+        try (InputStream in = BlockCompressedLog.open(compressed, 0)) {
+            assertEquals(-1, in.read());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HtmlConsoleCacheTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test public void serveFromCheckpoints() throws Exception {
+        Random r = new Random(1);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 300000) {
+            text.append("line é ").append(r.nextInt()).append('\n');
+        }
+        byte[] data = text.toString().getBytes("UTF-8");
+        File dir = tmp.getRoot();
+
+        HtmlConsoleCache.Recorder recorder = HtmlConsoleCache.record(dir, data.length, "key");
+        assertNotNull(recorder);
+        StringWriter live = new StringWriter();
+        final Writer w = recorder.tee(live);
+        OutputStream out = recorder.wrap(new LineTransformationOutputStream() {
+            @Override protected void eol(byte[] b, int len) throws IOException {
+                w.write("<b>" + new String(b, 0, len, "UTF-8") + "</b>");
+            }
+        });
+        for (int pos = 0; pos < data.length;) {
+            int n = Math.min(data.length - pos, r.nextInt(10000) + 1);
+            out.write(data, pos, n);
+            pos += n;
+        }
+        recorder.commit(data.length);
+
+        assertNull(HtmlConsoleCache.open(dir, data.length, "other"));
+        assertNull(HtmlConsoleCache.open(dir, data.length + 1, "key"));
+        try (HtmlConsoleCache cache = HtmlConsoleCache.open(dir, data.length, "key")) {
+            assertNotNull(cache);
+            assertEquals(0, cache.findCheckpoint(0)[0]);
+            assertNull(cache.findCheckpoint(data.length + 1));
+            for (int i = 0; i < 50; i++) {
+                long[] checkpoint = cache.findCheckpoint(r.nextInt(200000));
+                assertEquals('\n', data[(int) checkpoint[0] - 1]);
+                StringWriter cached = new StringWriter();
+                cache.writeHtmlTo(checkpoint[1], cached);
+                // the HTML of the lines that start at the checkpoint
+                String expected = new String(data, (int) checkpoint[0], data.length - (int) checkpoint[0], "UTF-8");
+                assertEquals(expected.replaceAll("(?m)^(.*\n)", "<b>$1</b>"), cached.toString());
+            }
+        }
+    }
+
+    @Test public void incompleteRenderingIsDiscarded() throws Exception {
+        File dir = tmp.getRoot();
+        HtmlConsoleCache.Recorder recorder = HtmlConsoleCache.record(dir, 100, "key");
+        assertNotNull(recorder);
+        recorder.commit(-1);
+        assertNull(HtmlConsoleCache.open(dir, 100, "key"));
+        assertEquals(0, dir.list().length);
+    }
+}
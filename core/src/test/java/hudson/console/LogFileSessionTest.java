@@ -0,0 +1,70 @@
+package hudson.console;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogFileSessionTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test public void lastLineEnd() throws Exception {
+        File log = tmp.newFile();
+        FileUtils.writeStringToFile(log, "one\ntwo\r\nthree\rfour", StandardCharsets.UTF_8);
+        try (LogFileSession session = new LogFileSession(log)) {
+            long size = session.size();
+            assertEquals(19, size);
+            assertEquals(15, session.lastLineEnd(0, size));
+            assertEquals(9, session.lastLineEnd(0, 14));
+            assertEquals(8, session.lastLineEnd(0, 8));
+            assertEquals(4, session.lastLineEnd(0, 7));
+            assertEquals(5, session.lastLineEnd(5, 7));
+            assertEquals(15, session.lastLineEnd(15, size));
+        }
+    }
+
+    /**
+     * A line end far from the end of a long line, across many reads.
+     */
+    @Test public void longLine() throws Exception {
+        File log = tmp.newFile();
+        try (RandomAccessFile f = new RandomAccessFile(log, "rw")) {
+            f.write("start\n".getBytes(StandardCharsets.UTF_8));
+            f.setLength(64 * 1024 * 1024); // sparse, no line end
+        }
+        try (LogFileSession session = new LogFileSession(log)) {
+            assertEquals(6, session.lastLineEnd(0, session.size()));
+            assertEquals(7, session.lastLineEnd(7, session.size()));
+        }
+    }
+
+    @Test public void transferTo() throws Exception {
+        File log = tmp.newFile();
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        FileUtils.writeByteArrayToFile(log, data);
+        try (LogFileSession session = new LogFileSession(log)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(90000, session.transferTo(10, 90000, out));
+            assertArrayEquals(Arrays.copyOfRange(data, 10, 90000), out.toByteArray());
+
+            File copy = tmp.newFile();
+            try (FileOutputStream fos = new FileOutputStream(copy)) {
+                assertEquals(data.length, session.transferTo(0, data.length + 10, fos));
+            }
+            assertArrayEquals(data, FileUtils.readFileToByteArray(copy));
+        }
+    }
+}
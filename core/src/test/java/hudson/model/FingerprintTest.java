@@ -211,6 +211,36 @@ public class FingerprintTest {
         assertFalse(x.removeAll(y));
     }
 
+    @Test public void includesUnsorted() {
+        RangeSet rs = RangeSet.fromString("5,1-2,9", false);
+        assertTrue(rs.includes(1));
+        assertTrue(rs.includes(5));
+        assertTrue(rs.includes(9));
+        assertFalse(rs.includes(3));
+        rs.add(3);
+        assertTrue(rs.includes(3));
+    }
+
+    @Test public void concurrentAdd() throws Exception {
+        final RangeSet rs = new RangeSet();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override public void run() {
+                    for (int i = offset; i < 1000; i += 4) {
+                        rs.add(i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals("[0,1000)", rs.toString());
+    }
+
     @Test public void deserialize() throws Exception {
         assertEquals("Fingerprint["
                 + "original=stapler/org.kohsuke.stapler:stapler-jelly #123,"
@@ -24,8 +24,12 @@
 
 package hudson.model;
 
+import hudson.console.BlockCompressedLog;
+import hudson.console.LogLineIndex;
 import java.io.IOException;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.List;
 import java.util.Locale;
@@ -214,6 +218,55 @@ public class RunTest {
         assertEquals("c3", logLines.get(3));
     }
 
+    @Test
+    public void getLogUsesLineIndex() throws Exception {
+        Job j = Mockito.mock(Job.class);
+        File tempBuildDir = tmp.newFolder();
+        Mockito.when(j.getBuildDir()).thenReturn(tempBuildDir);
+        Run<? extends Job<?, ?>, ? extends Run<?, ?>> r = new Run(j, 0) {};
+        File f = r.getLogFile();
+        f.getParentFile().mkdirs();
+        PrintWriter w = new PrintWriter(new OutputStreamWriter(LogLineIndex.wrap(f, new FileOutputStream(f)), "UTF-8"));
+        for (int i = 0; i < 1000; i++) {
+            w.print("line" + i + "\r\n");
+        }
+        w.print("last");
+        w.close();
+        assertNotNull(LogLineIndex.open(f));
+
+        List<String> indexed = r.getLog(10);
+        assertEquals("last", indexed.get(9));
+        assertEquals("line992", indexed.get(1));
+        assertEquals(1001, r.getLog(2000).size());
+
+        assertTrue(LogLineIndex.getIndexFile(f).delete());
+        assertEquals(r.getLog(10), indexed);
+    }
+
+    @Test
+    public void getLogOfBlockCompressedLog() throws Exception {
+        Job j = Mockito.mock(Job.class);
+        File tempBuildDir = tmp.newFolder();
+        Mockito.when(j.getBuildDir()).thenReturn(tempBuildDir);
+        Run<? extends Job<?, ?>, ? extends Run<?, ?>> r = new Run(j, 0) {};
+        File f = r.getLogFile();
+        f.getParentFile().mkdirs();
+        PrintWriter w = new PrintWriter(f, "utf-8");
+        for (int i = 0; i < 20; i++) {
+            w.println("dummy" + i);
+        }
+        w.close();
+        List<String> raw = r.getLog(10);
+        List<String> all = r.getLog(100);
+        String text = r.getLog();
+
+        BlockCompressedLog.compress(f);
+        assertEquals(BlockCompressedLog.getCompressedFile(f), r.getLogFile());
+        assertEquals(raw, r.getLog(10));
+        assertEquals(all, r.getLog(100));
+        assertEquals(text, r.getLog());
+    }
+
     @Test
     public void compareRunsFromSameJobWithDifferentNumbers() throws Exception {
         final ItemGroup group = Mockito.mock(ItemGroup.class);
@@ -56,6 +56,19 @@ public class RobustReflectionConverterTest {
         return (Point) xs.fromXML("<" + clsName + "><x>1</x><y>2</y><z>3</z></" + clsName + '>');
     }
 
+    @Test
+    public void fieldPlansFollowConfiguration() {
+        XStream2 xs = new XStream2();
+        read(xs);
+        read(xs);
+        // <x> now means something else than what was looked up while reading
+        xs.aliasField("x", Point.class, "y");
+        String clsName = Point.class.getName();
+        Point p = (Point) xs.fromXML("<" + clsName + "><x>5</x></" + clsName + '>');
+        assertEquals(0, p.x);
+        assertEquals(5, p.y);
+    }
+
     @Test
     public void ifWorkaroundNeeded() {
         try {
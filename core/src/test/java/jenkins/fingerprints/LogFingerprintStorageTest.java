@@ -0,0 +1,123 @@
+package jenkins.fingerprints;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Util;
+import hudson.model.Fingerprint;
+import java.io.Closeable;
+import java.io.File;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogFingerprintStorageTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Fingerprint sample() throws Exception {
+        return Fingerprint.load(new File(LogFingerprintStorageTest.class.getResource("/hudson/model/fingerprint.xml").toURI()));
+    }
+
+    @Test public void roundTrip() throws Exception {
+        File log = new File(tmp.getRoot(), "fingerprints.dat");
+        Fingerprint f = sample();
+        String id = f.getHashString();
+
+        LogFingerprintStorage storage = new LogFingerprintStorage(log);
+        assertNull(storage.load(id));
+        storage.save(f);
+        assertEquals(f.toString(), storage.load(id).toString());
+        storage.close();
+
+        // the index is rebuilt from the log
+        storage = new LogFingerprintStorage(log);
+        assertEquals(f.toString(), storage.load(id).toString());
+        storage.delete(id);
+        assertNull(storage.load(id));
+        storage.close();
+
+        storage = new LogFingerprintStorage(log);
+        assertNull(storage.load(id));
+        storage.close();
+    }
+
+    @Test public void batch() throws Exception {
+        File log = new File(tmp.getRoot(), "fingerprints.dat");
+        Fingerprint f = sample();
+        LogFingerprintStorage storage = new LogFingerprintStorage(log);
+        try (Closeable batch = storage.startBatch()) {
+            storage.save(f);
+            // buffered but still readable
+            assertEquals(f.toString(), storage.load(f.getHashString()).toString());
+        }
+        storage.close();
+        assertEquals(f.toString(), new LogFingerprintStorage(log).load(f.getHashString()).toString());
+    }
+
+    @Test public void partialRecordIsDiscarded() throws Exception {
+        File log = new File(tmp.getRoot(), "fingerprints.dat");
+        Fingerprint f = sample();
+        LogFingerprintStorage storage = new LogFingerprintStorage(log);
+        storage.save(f);
+        storage.close();
+        long good = log.length();
+        storage = new LogFingerprintStorage(log);
+        storage.save(f);
+        storage.close();
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        storage = new LogFingerprintStorage(log);
+        assertEquals(f.toString(), storage.load(f.getHashString()).toString());
+        storage.close();
+        assertEquals(good, log.length());
+    }
+
+    @Test public void migration() throws Exception {
+        Fingerprint f = sample();
+        byte[] md5 = Util.fromHexString(f.getHashString());
+        File xml = new File(tmp.getRoot(), "fingerprints/" + Util.toHexString(md5, 0, 1) + "/" + Util.toHexString(md5, 1, 1)
+                + "/" + Util.toHexString(md5, 2, 14) + ".xml");
+        f.save(xml);
+
+        LogFingerprintStorage storage = new LogFingerprintStorage(new File(tmp.getRoot(), "fingerprints.dat"));
+        assertTrue(storage.isReady());
+        assertEquals(f.toString(), storage.load(f.getHashString()).toString());
+        storage.close();
+        assertFalse(new File(tmp.getRoot(), "fingerprints").exists());
+        assertTrue(new File(tmp.getRoot(), "fingerprints.migrated").isDirectory());
+    }
+
+    @Test public void index() {
+        LogFingerprintStorage.Index index = new LogFingerprintStorage.Index();
+        for (int i = 1; i <= 5000; i++) {
+            index.put(md5(i), i * 100L, i);
+        }
+        for (int i = 1; i <= 5000; i += 2) {
+            index.remove(md5(i));
+        }
+        assertEquals(2500, index.size);
+        for (int i = 1; i <= 5000; i++) {
+            int slot = index.find(md5(i));
+            if (i % 2 == 0) {
+                assertEquals(i * 100L, index.offsets[slot]);
+            } else {
+                assertEquals(-1, slot);
+            }
+        }
+        assertEquals(2500, index.ids().size());
+    }
+
+    private static byte[] md5(int i) {
+        byte[] r = new byte[16];
+        r[15] = (byte) i;
+        r[14] = (byte) (i >> 8);
+        r[3] = (byte) (i * 31);
+        return r;
+    }
+}
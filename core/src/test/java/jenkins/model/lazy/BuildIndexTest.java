@@ -0,0 +1,79 @@
+package jenkins.model.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildIndexTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        File dir = tmp.getRoot();
+        BuildIndex idx = new BuildIndex(dir);
+        idx.put(entry(1, "SUCCESS", null));
+        idx.put(entry(2, null, "custom"));
+        idx.put(entry(1, "FAILURE", null)); // supersedes the first one
+
+        BuildIndex reloaded = new BuildIndex(dir);
+        assertEquals(entry(1, "FAILURE", null), reloaded.get(1));
+        assertEquals(entry(2, null, "custom"), reloaded.get(2));
+        assertNull(reloaded.get(3));
+    }
+
+    @Test
+    public void truncatedEntryIsIgnored() throws Exception {
+        File dir = tmp.getRoot();
+        BuildIndex idx = new BuildIndex(dir);
+        idx.put(entry(1, "SUCCESS", null));
+        idx.put(entry(2, "SUCCESS", null));
+        RandomAccessFile f = new RandomAccessFile(idx.getFile(), "rw");
+        try {
+            f.setLength(f.length() - 3);
+        } finally {
+            f.close();
+        }
+
+        BuildIndex reloaded = new BuildIndex(dir);
+        assertEquals(entry(1, "SUCCESS", null), reloaded.get(1));
+        assertNull(reloaded.get(2));
+    }
+
+    @Test
+    public void garbageIsDiscarded() throws Exception {
+        File dir = tmp.getRoot();
+        File f = new File(dir, BuildIndex.FILE_NAME);
+        Files.write(f.toPath(), "not an index".getBytes("UTF-8"));
+
+        BuildIndex idx = new BuildIndex(dir);
+        assertNull(idx.get(1));
+        idx.put(entry(1, "SUCCESS", null));
+        assertEquals(entry(1, "SUCCESS", null), new BuildIndex(dir).get(1));
+    }
+
+    @Test
+    public void compaction() throws Exception {
+        File dir = tmp.getRoot();
+        BuildIndex idx = new BuildIndex(dir);
+        for (int i = 0; i < 200; i++) {
+            idx.put(new BuildIndex.Entry(1, "1", null, 0, 0, i, null, 0));
+        }
+        long size = idx.getFile().length();
+        assertEquals(new BuildIndex.Entry(1, "1", null, 0, 0, 199, null, 0), new BuildIndex(dir).get(1));
+        // 200 entries would take far more space than this
+        assertTrue(size < 100 * 40);
+    }
+
+    private static BuildIndex.Entry entry(int n, String result, String displayName) {
+        return new BuildIndex.Entry(n, String.valueOf(n), result, 1000L * n, 1000L * n + 1, 500, displayName, 42);
+    }
+}
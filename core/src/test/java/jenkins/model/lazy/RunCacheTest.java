@@ -0,0 +1,49 @@
+package jenkins.model.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import jenkins.model.lazy.BuildReference.Holder;
+import org.junit.Test;
+
+public class RunCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        RunCache cache = new RunCache(2, Long.MAX_VALUE);
+        Object a = new Object(), b = new Object(), c = new Object();
+        Holder<Object> ha = cache.make(a);
+        Holder<Object> hb = cache.make(b);
+        assertSame(a, ha.get()); // b is now the eldest
+        cache.make(c);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // still reachable from here, so it comes back and pushes out the eldest again
+        assertSame(b, hb.get());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void boundedBySize() {
+        RunCache cache = new RunCache(100, 3000);
+        for (int i = 0; i < 10; i++) {
+            cache.make(new Object());
+        }
+        // each entry is estimated at 1024 bytes at least
+        assertEquals(2, cache.size());
+        assertEquals(2048, cache.getEstimatedSize());
+    }
+
+    @Test
+    public void release() {
+        RunCache cache = new RunCache(10, Long.MAX_VALUE);
+        Holder<Object> h = cache.make(new Object());
+        assertEquals(1, cache.size());
+        cache.release(h);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedSize());
+    }
+}
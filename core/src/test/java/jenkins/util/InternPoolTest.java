@@ -0,0 +1,43 @@
+package jenkins.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.util.XStream2;
+import java.util.List;
+import org.junit.Test;
+
+public class InternPoolTest {
+
+    @Test public void strings() {
+        String a = new String("origin/master");
+        String b = new String("origin/master");
+        assertNotSame(a, b);
+        assertSame(InternPool.intern(a), InternPool.intern(b));
+        assertNull(InternPool.intern(null));
+    }
+
+    @Test public void chars() {
+        char[] a = "src/main/java".toCharArray();
+        char[] b = "src/main/java".toCharArray();
+        assertSame(InternPool.intern(a), InternPool.intern(b));
+        assertArrayEquals(a, InternPool.intern(b));
+    }
+
+    /**
+     * Strings read by the converter are shared between separate unmarshallings.
+     */
+    @Test public void converter() {
+        XStream2 xs = new XStream2();
+        xs.registerConverter(new InternPool.StringConverterImpl());
+        String xml = "<list><string>user:alice</string><string>user:alice</string></list>";
+        List<?> l1 = (List<?>) xs.fromXML(xml);
+        List<?> l2 = (List<?>) xs.fromXML(xml);
+        assertEquals("user:alice", l1.get(0));
+        assertSame(l1.get(0), l1.get(1));
+        assertSame(l1.get(0), l2.get(0));
+    }
+}
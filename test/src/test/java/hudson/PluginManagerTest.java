@@ -41,9 +41,12 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Future;
+import java.util.jar.Manifest;
 import jenkins.RestartRequiredException;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
@@ -213,6 +216,63 @@ public class PluginManagerTest {
         assertNotNull(r.jenkins.getDescriptorByType(c));
     }
 
+    @Test public void uberClassLoaderForgetsMissesOnDynamicLoad() throws Exception {
+        ClassLoader uberClassLoader = r.jenkins.getPluginManager().uberClassLoader;
+        try {
+            uberClassLoader.loadClass("htmlpublisher.HtmlPublisher");
+            fail();
+        } catch (ClassNotFoundException x) {
+            // not installed yet
+        }
+
+        URL res = getClass().getClassLoader().getResource("plugins/htmlpublisher.jpi");
+        File f = new File(r.jenkins.getRootDir(), "plugins/htmlpublisher.jpi");
+        FileUtils.copyURLToFile(res, f);
+        r.jenkins.pluginManager.dynamicLoad(f);
+
+        Class<?> publisher = uberClassLoader.loadClass("htmlpublisher.HtmlPublisher");
+        assertSame(publisher, uberClassLoader.loadClass("htmlpublisher.HtmlPublisher"));
+        // looked up in the plugin of its package
+        Class<?> descriptor = uberClassLoader.loadClass("htmlpublisher.HtmlPublisher$DescriptorImpl");
+        assertSame(publisher.getClassLoader(), descriptor.getClassLoader());
+    }
+
+    @Test public void uberClassLoaderGoesStraightToThePluginOfAPackage() throws Exception {
+        URL res = getClass().getClassLoader().getResource("plugins/htmlpublisher.jpi");
+        File f = new File(r.jenkins.getRootDir(), "plugins/htmlpublisher.jpi");
+        FileUtils.copyURLToFile(res, f);
+        r.jenkins.pluginManager.dynamicLoad(f);
+        PluginWrapper htmlpublisher = r.jenkins.pluginManager.getPlugin("htmlpublisher");
+
+        // a plugin without classes, asked first in plugin order, which records what it is asked for
+        final List<String> asked = new ArrayList<String>();
+        ClassLoader recording = new jenkins.util.AntClassLoader(getClass().getClassLoader(), true) {
+            @Override
+            public Class findClass(String name) throws ClassNotFoundException {
+                asked.add(name);
+                throw new ClassNotFoundException(name);
+            }
+        };
+        PluginWrapper decoy = new PluginWrapper(r.jenkins.pluginManager, tmp.newFile("decoy.jpi"), new Manifest(), null,
+                recording, tmp.newFile("decoy.jpi.disabled"), Collections.<PluginWrapper.Dependency>emptyList(),
+                Collections.<PluginWrapper.Dependency>emptyList());
+        UberClassLoader uberClassLoader = new UberClassLoader(Arrays.asList(decoy, htmlpublisher));
+
+        assertNotNull(uberClassLoader.getPackageIndex());
+        assertSame(htmlpublisher, uberClassLoader.getPackageIndex().owners.get("htmlpublisher"));
+        assertSame(htmlpublisher.classLoader, uberClassLoader.loadClass("htmlpublisher.HtmlPublisher").getClassLoader());
+        assertEquals(Collections.emptyList(), asked);
+
+        // packages of no plugin are still looked up everywhere
+        try {
+            uberClassLoader.loadClass("nonexistent.Nothing");
+            fail();
+        } catch (ClassNotFoundException x) {
+            // expected
+        }
+        assertEquals(Collections.singletonList("nonexistent.Nothing"), asked);
+    }
+
     @Test public void prevalidateConfig() throws Exception {
         assumeFalse("TODO: Implement this test on Windows", Functions.isWindows());
         PersistedList<UpdateSite> sites = r.jenkins.getUpdateCenter().getSites();
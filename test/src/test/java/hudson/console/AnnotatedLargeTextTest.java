@@ -24,11 +24,20 @@
 
 package hudson.console;
 
+import hudson.Launcher;
 import hudson.MarkupText;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.OneShotEvent;
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.StringWriter;
+import java.net.URL;
 import java.util.logging.Level;
 import org.apache.commons.io.Charsets;
 import static org.hamcrest.CoreMatchers.*;
@@ -40,6 +49,7 @@ import org.jvnet.hudson.test.For;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.LoggerRule;
+import org.jvnet.hudson.test.TestBuilder;
 import org.kohsuke.stapler.framework.io.ByteBuffer;
 
 @For({AnnotatedLargeText.class, ConsoleNote.class, ConsoleAnnotationOutputStream.class, PlainTextConsoleOutputStream.class})
@@ -105,6 +115,40 @@ public class AnnotatedLargeTextTest {
         assertThat(logging.getMessages(), hasItem("Failed to resurrect annotation")); // TODO assert that this is IOException: MAC mismatch
     }
 
+    @Test
+    public void streamRunningConsole() throws Exception {
+        final OneShotEvent proceed = new OneShotEvent();
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                listener.getLogger().println("first line");
+                proceed.block();
+                listener.getLogger().println("last line");
+                return true;
+            }
+        });
+        FreeStyleBuild b = p.scheduleBuild2(0).waitForStart();
+        ConsoleStream.ENABLED = true;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new URL(r.getURL(), b.getUrl() + "logText/progressiveHtmlStream?start=0").openStream(), Charsets.UTF_8))) {
+            StringBuilder events = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("event: end")) {
+                events.append(line).append('\n');
+                if (line.equals("data: first line")) {
+                    proceed.signal();
+                }
+            }
+            assertEquals("event: end", line);
+            assertThat(events.toString(), containsString("data: last line\n"));
+            assertThat(events.toString(), not(containsString("event: fallback")));
+        } finally {
+            ConsoleStream.ENABLED = false;
+        }
+        r.assertBuildStatusSuccess(r.waitForCompletion(b));
+    }
+
     /** Simplified version of {@link HyperlinkNote}. */
     static class TestNote extends ConsoleNote<Void> {
         private final String url;
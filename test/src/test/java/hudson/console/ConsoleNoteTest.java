@@ -0,0 +1,72 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.MarkupText;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class ConsoleNoteTest {
+
+    @ClassRule
+    public static JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void encodeAndRead() throws Exception {
+        HyperlinkNote note = new HyperlinkNote("/job/x/", 5);
+        String encoded = note.encode();
+        assertEquals(encoded, new HyperlinkNote("/job/x/", 5).encode());
+        assertTrue(encoded.startsWith(ConsoleNote.PREAMBLE_STR));
+        assertTrue(encoded.endsWith(ConsoleNote.POSTAMBLE_STR));
+
+        ConsoleNote first = read(encoded);
+        ConsoleNote second = read(encoded);
+        assertEquals(HyperlinkNote.class, first.getClass());
+        // immutable notes are shared
+        assertSame(first, second);
+
+        ConsoleNote mutable = read(new MutableNote().encode());
+        assertNotSame(mutable, read(new MutableNote().encode()));
+    }
+
+    @Test
+    public void macIsCheckedEvenWhenCached() throws Exception {
+        String encoded = new HyperlinkNote("/job/y/", 3).encode();
+        read(encoded);
+
+        String body = encoded.substring(ConsoleNote.PREAMBLE_STR.length(), encoded.length() - ConsoleNote.POSTAMBLE_STR.length());
+        byte[] payload = Base64.decodeBase64(body.getBytes("US-ASCII"));
+        payload[4] ^= 1; // first byte of the MAC
+        String tampered = ConsoleNote.PREAMBLE_STR + new String(Base64.encodeBase64(payload), "US-ASCII") + ConsoleNote.POSTAMBLE_STR;
+        try {
+            read(tampered);
+            fail();
+        } catch (IOException e) {
+            assertEquals("MAC mismatch", e.getMessage());
+        }
+    }
+
+    private static ConsoleNote read(String encoded) throws Exception {
+        return ConsoleNote.readFrom(new DataInputStream(new ByteArrayInputStream(encoded.getBytes("US-ASCII"))));
+    }
+
+    static class MutableNote extends ConsoleNote<Void> {
+        private final List<String> seen = new ArrayList<String>();
+        @Override
+        public ConsoleAnnotator<?> annotate(Void context, MarkupText text, int charPos) {
+            seen.add(text.getText());
+            return null;
+        }
+    }
+}
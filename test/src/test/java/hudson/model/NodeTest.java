@@ -440,6 +440,22 @@ public class NodeTest {
         assertThatCloudLabelDoesNotContain(cloud, "label1 label2", 0);
     }
 
+    @Test
+    public void matchesOverriddenAssignedLabels() throws Exception {
+        Node n = new DumbSlave("custom", j.createTmpDir().getPath(), j.createComputerLauncher(null)) {
+            @Override
+            public Set<LabelAtom> getAssignedLabels() {
+                Set<LabelAtom> r = new HashSet<LabelAtom>(super.getAssignedLabels());
+                r.add(Jenkins.getInstance().getLabelAtom("added"));
+                return r;
+            }
+        };
+        n.setLabelString("configured");
+        assertTrue(j.jenkins.getLabel("added && configured").matches(n));
+        assertTrue(j.jenkins.getLabel("custom").matches(n));
+        assertFalse(j.jenkins.getLabel("other").matches(n));
+    }
+
     @Issue("SECURITY-281")
     @Test
     public void masterComputerConfigDotXml() throws Exception {
@@ -956,6 +956,69 @@ public class QueueTest {
         assertEquals("project", projects.get(0).toString());
     }
 
+    @Test public void incrementalMaintenance() throws Exception {
+        Queue.INCREMENTAL_MAINTENANCE = true;
+        try {
+            Queue q = r.jenkins.getQueue();
+            FreeStyleProject p = r.createFreeStyleProject();
+            long full = q.getFullMaintenanceCount();
+            r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+            assertTrue(q.getMaintenanceCount() > 0);
+            r.waitUntilNoActivity();
+
+            // nothing changed since the explicit full pass, so an incremental one has nothing to look at
+            q.maintain();
+            assertTrue(q.getFullMaintenanceCount() > full);
+            q.scheduleIncrementalMaintenance().get();
+            assertEquals(0, q.getLastMaintenanceItemsTouched());
+
+            // but a newly scheduled item is still picked up
+            r.assertBuildStatusSuccess(p.scheduleBuild2(0));
+        } finally {
+            Queue.INCREMENTAL_MAINTENANCE = false;
+        }
+    }
+
+    @Test public void causeOfBlockageIsMemoizedPerSnapshot() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject("blocked");
+        p.scheduleBuild2(0);
+        Queue q = r.jenkins.getQueue();
+        q.scheduleMaintenance().get();
+        Queue.Item item = q.getItem(p);
+        assertTrue(item instanceof Queue.BlockedItem);
+
+        int before = CountingQueueTaskDispatcher.canRunCalls.get();
+        long version = q.getSnapshotVersion();
+        assertEquals("counted", item.getWhy());
+        assertEquals("counted", item.getWhy());
+        assertEquals("counted", q.getItems()[0].getWhy());
+        assertEquals(version, q.getSnapshotVersion());
+        assertEquals(before + 1, CountingQueueTaskDispatcher.canRunCalls.get());
+
+        // a new snapshot evaluates again
+        q.scheduleMaintenance().get();
+        assertTrue(q.getSnapshotVersion() > version);
+        int afterMaintain = CountingQueueTaskDispatcher.canRunCalls.get();
+        assertEquals("counted", item.getWhy());
+        assertEquals(afterMaintain + 1, CountingQueueTaskDispatcher.canRunCalls.get());
+        q.cancel(item);
+    }
+
+    @TestExtension("causeOfBlockageIsMemoizedPerSnapshot")
+    public static class CountingQueueTaskDispatcher extends QueueTaskDispatcher {
+        static final AtomicInteger canRunCalls = new AtomicInteger();
+        @Override
+        public CauseOfBlockage canRun(Queue.Item item) {
+            canRunCalls.incrementAndGet();
+            return new CauseOfBlockage() {
+                @Override
+                public String getShortDescription() {
+                    return "counted";
+                }
+            };
+        }
+    }
+
     //we force the project not to be executed so that it stays in the queue
     @TestExtension("queueApiOutputShouldBeFilteredByUserPermission")
     public static class MyQueueTaskDispatcher extends QueueTaskDispatcher {
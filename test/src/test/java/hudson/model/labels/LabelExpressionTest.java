@@ -148,6 +148,22 @@ public class LabelExpressionTest {
         assertSame(s.getLabelString(), "bar");
     }
 
+    @Test
+    public void matchesLabelAtomSet() throws Exception {
+        DumbSlave s = j.createSlave("node1", "linux docker", null);
+        Label l = Label.parseExpression("linux && (docker || x86) && !flaky");
+        assertTrue(l.matches(s));
+        assertTrue(l.matches(s.getLabelAtomSet()));
+        assertEquals(l.matches(s.getAssignedLabels()), l.matches(s.getLabelAtomSet()));
+        assertTrue(Label.parseExpression("node1").matches(s));
+        assertFalse(Label.parseExpression("windows || linux -> flaky").matches(s));
+
+        // the cached set follows changes to the label string
+        s.setLabelString("linux docker flaky");
+        assertFalse(l.matches(s));
+        assertTrue(Label.parseExpression("windows || linux -> flaky").matches(s));
+    }
+
     /**
      * Tests the expression parser.
      */
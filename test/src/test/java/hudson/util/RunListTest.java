@@ -0,0 +1,68 @@
+package hudson.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.model.RunMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class RunListTest {
+
+    @Rule public JenkinsRule r = new JenkinsRule();
+
+    @Test public void mergeLoadsOnlyReturnedBuilds() throws Exception {
+        FreeStyleProject p1 = r.createFreeStyleProject();
+        FreeStyleProject p2 = r.createFreeStyleProject();
+        FreeStyleBuild a1 = r.buildAndAssertSuccess(p1);
+        FreeStyleBuild b1 = r.buildAndAssertSuccess(p2);
+        FreeStyleBuild a2 = r.buildAndAssertSuccess(p1);
+        FreeStyleBuild b2 = r.buildAndAssertSuccess(p2);
+
+        RunList<Run> all = new RunList<Run>(Arrays.asList(p1, p2));
+        assertEquals(Arrays.<Run>asList(b2, a2, b1, a1), new ArrayList<Run>(all));
+
+        RunMap<FreeStyleBuild> m1 = p1.getLazyBuildMixIn()._getRuns();
+        RunMap<FreeStyleBuild> m2 = p2.getLazyBuildMixIn()._getRuns();
+        m1.purgeCache();
+        m2.purgeCache();
+
+        RunList<Run> latest = new RunList<Run>(Arrays.asList(p1, p2)).limit(3);
+        assertEquals(3, latest.size());
+        assertEquals(4, new RunList<Run>(Arrays.asList(p1, p2)).size());
+        assertEquals(0, m1.getLoadedBuilds().size() + m2.getLoadedBuilds().size());
+
+        assertEquals(b2.getNumber(), new RunList<Run>(Arrays.asList(p1, p2)).limit(1).iterator().next().getNumber());
+        assertEquals(0, m1.getLoadedBuilds().size());
+        assertEquals(1, m2.getLoadedBuilds().size());
+    }
+
+    @Test public void byTimestampSkipsNewerBuildsWithoutLoading() throws Exception {
+        FreeStyleProject p1 = r.createFreeStyleProject();
+        FreeStyleProject p2 = r.createFreeStyleProject();
+        FreeStyleBuild a1 = r.buildAndAssertSuccess(p1);
+        FreeStyleBuild b1 = r.buildAndAssertSuccess(p2);
+        FreeStyleBuild a2 = r.buildAndAssertSuccess(p1);
+        FreeStyleBuild b2 = r.buildAndAssertSuccess(p2);
+
+        RunMap<FreeStyleBuild> m1 = p1.getLazyBuildMixIn()._getRuns();
+        RunMap<FreeStyleBuild> m2 = p2.getLazyBuildMixIn()._getRuns();
+        m1.purgeCache();
+        m2.purgeCache();
+
+        RunList<Run> window = new RunList<Run>(Arrays.asList(p1, p2)).byTimestamp(b1.getTimeInMillis(), b2.getTimeInMillis());
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (Run run : window) {
+            numbers.add(run.getNumber());
+        }
+        assertEquals(Arrays.asList(a2.getNumber(), b1.getNumber()), numbers);
+        assertFalse(m2.getLoadedBuilds().containsKey(b2.getNumber()));
+    }
+}
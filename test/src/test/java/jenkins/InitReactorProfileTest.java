@@ -0,0 +1,33 @@
+package jenkins;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.init.InitMilestone;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class InitReactorProfileTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void profileOfStartup() throws Exception {
+        InitReactorProfile profile = InitReactorProfile.getLast();
+        assertNotNull(profile);
+        assertTrue(profile.isFinished());
+        assertFalse(profile.getTasks().isEmpty());
+        assertFalse(profile.getCriticalPath().isEmpty());
+        assertTrue(profile.getMilestones().containsKey(InitMilestone.JOB_LOADED));
+
+        j.createWebClient().goTo("startup-profile");
+        JSONObject trace = j.getJSON("startup-profile/trace").getJSONObject();
+        JSONArray events = trace.getJSONArray("traceEvents");
+        assertFalse(events.isEmpty());
+    }
+}
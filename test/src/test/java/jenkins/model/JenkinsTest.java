@@ -46,9 +46,11 @@ import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
 import hudson.maven.MavenModuleSet;
 import hudson.maven.MavenModuleSetBuild;
+import hudson.model.AbstractProject;
 import hudson.model.Computer;
 import hudson.model.Failure;
 import hudson.model.RestartListener;
+import hudson.model.Result;
 import hudson.model.RootAction;
 import hudson.model.UnprotectedRootAction;
 import hudson.model.User;
@@ -61,6 +63,7 @@ import hudson.security.GlobalMatrixAuthorizationStrategy;
 import hudson.slaves.ComputerListener;
 import hudson.slaves.DumbSlave;
 import hudson.slaves.OfflineCause;
+import hudson.tasks.BuildTrigger;
 import hudson.util.FormValidation;
 
 import org.junit.Rule;
@@ -75,11 +78,15 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import org.apache.commons.io.FileUtils;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import org.junit.Assume;
 import org.jvnet.hudson.test.MockAuthorizationStrategy;
@@ -601,4 +608,44 @@ public class JenkinsTest {
         assertThat(protocolToDisable2 + " must be disabled after the roundtrip", 
                 j.jenkins.getAgentProtocols(), not(hasItem(protocolToDisable2)));
     }
+
+    @Test
+    public void reloadPublishesItemsFromDisk() throws Exception {
+        FreeStyleProject kept = j.createFreeStyleProject("kept");
+        FreeStyleProject gone = j.createFreeStyleProject("gone");
+        FileUtils.deleteDirectory(gone.getRootDir());
+
+        j.jenkins.reload();
+
+        assertNull(j.jenkins.getItem("gone"));
+        FreeStyleProject reloaded = j.jenkins.getItemByFullName("kept", FreeStyleProject.class);
+        assertNotNull(reloaded);
+        assertFalse("a new instance must have been loaded", kept == reloaded);
+        assertEquals(1, j.jenkins.getItems().size());
+    }
+
+    @Test
+    public void lazyItemLoading() throws Exception {
+        FreeStyleProject a = j.createFreeStyleProject("a");
+        j.createFreeStyleProject("b");
+        a.getPublishersList().add(new BuildTrigger("b", Result.SUCCESS));
+        a.save();
+        boolean lazy = Jenkins.LAZY_ITEM_LOADING;
+        Jenkins.LAZY_ITEM_LOADING = true;
+        try {
+            j.jenkins.reload();
+        } finally {
+            Jenkins.LAZY_ITEM_LOADING = lazy;
+        }
+
+        FreeStyleProject reloaded = j.jenkins.getItemByFullName("A", FreeStyleProject.class);
+        assertNotNull(reloaded);
+        assertFalse("a new instance must have been loaded", a == reloaded);
+        assertEquals(2, j.jenkins.getItems().size());
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(j.jenkins.getItemMap().keySet()));
+        // built before startup completed, from all the items
+        List<AbstractProject> downstream = j.jenkins.getDependencyGraph().getDownstream(reloaded);
+        assertEquals(1, downstream.size());
+        assertEquals("b", downstream.get(0).getName());
+    }
 }
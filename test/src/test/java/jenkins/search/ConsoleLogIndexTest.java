@@ -0,0 +1,115 @@
+package jenkins.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import java.io.IOException;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ConsoleLogIndexTest {
+
+    @Rule public JenkinsRule j = new JenkinsRule();
+
+    @Before public void enable() {
+        ConsoleLogIndex.ENABLED = true;
+    }
+
+    @After public void disable() {
+        ConsoleLogIndex.ENABLED = false;
+    }
+
+    @Test public void searchAndDelete() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                listener.getLogger().println("compiling");
+                listener.getLogger().println("java.lang.NullPointerException at Widget" + build.getNumber());
+                return true;
+            }
+        });
+        FreeStyleBuild b1 = j.buildAndAssertSuccess(p);
+        FreeStyleBuild b2 = j.buildAndAssertSuccess(p);
+        ConsoleLogIndex index = ConsoleLogIndex.get();
+        index.backfill(p); // in case the builds were not finalized yet
+        index.waitForWrites();
+
+        List<ConsoleLogSearch.Hit> hits = new ConsoleLogSearch().search("NullPointerException");
+        assertEquals(2, hits.size());
+        assertEquals(b2, hits.get(0).getRun());
+        assertEquals(b1, hits.get(1).getRun());
+        long offset = hits.get(1).getOffsets()[0];
+        assertTrue(b1.getLog().substring((int) offset).startsWith("java.lang.NullPointerException"));
+
+        hits = new ConsoleLogSearch().search("nullpointerexception widget1");
+        assertEquals(1, hits.size());
+        assertEquals(b1, hits.get(0).getRun());
+
+        b1.delete();
+        index.waitForWrites();
+        hits = new ConsoleLogSearch().search("NullPointerException");
+        assertEquals(1, hits.size());
+        assertEquals(b2, hits.get(0).getRun());
+
+        p.renameTo("q");
+        index.waitForWrites();
+        hits = new ConsoleLogSearch().search("widget2");
+        assertEquals(1, hits.size());
+        assertEquals("q", hits.get(0).getJob());
+    }
+
+    @Test public void recreatedJob() throws Exception {
+        FreeStyleProject p = createEcho("p", "alpha");
+        j.buildAndAssertSuccess(p);
+        ConsoleLogIndex index = ConsoleLogIndex.get();
+        index.backfill(p);
+        index.waitForWrites();
+        assertEquals(1, new ConsoleLogSearch().search("alpha").size());
+
+        p.delete();
+        p = createEcho("p", "beta");
+        j.buildAndAssertSuccess(p);
+        index.backfill(p);
+        index.waitForWrites();
+        assertEquals(0, new ConsoleLogSearch().search("alpha").size());
+        assertEquals(1, new ConsoleLogSearch().search("beta").size());
+    }
+
+    @Test public void backfillSkipsIndexedBuildsWithoutLoading() throws Exception {
+        FreeStyleProject p = createEcho("p", "alpha");
+        j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+        ConsoleLogIndex index = ConsoleLogIndex.get();
+        index.backfill(p);
+        index.waitForWrites();
+
+        p.getLazyBuildMixIn()._getRuns().purgeCache();
+        index.backfill(p);
+        index.waitForWrites();
+        assertEquals(0, p.getLazyBuildMixIn()._getRuns().getLoadedBuilds().size());
+        assertEquals(2, new ConsoleLogSearch().search("alpha").size());
+    }
+
+    private FreeStyleProject createEcho(String name, final String text) throws IOException {
+        FreeStyleProject p = j.createFreeStyleProject(name);
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                listener.getLogger().println(text);
+                return true;
+            }
+        });
+        return p;
+    }
+}